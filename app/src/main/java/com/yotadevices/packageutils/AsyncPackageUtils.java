@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import android.content.Intent;
+import android.graphics.drawable.Drawable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The {@code AsyncPackageUtils} runs {@code PackageUtils} calls on a background executor and
+ * returns their results as {@link PackageFuture}s, which can be chained without blocking, e.g.
+ * <pre>{@code
+ * async.getMetaString(packageName, tag)
+ *         .thenCompose(new PackageFuture.AsyncFunction<String, String>() {
+ *             public PackageFuture<String> apply(String name) {
+ *                 return async.getStringByName(packageName, name);
+ *             }
+ *         });
+ * }</pre>
+ * By default calls run on the shared bounded {@link PackageUtils#getExecutor()}.
+ * <p>
+ * All query methods of {@code PackageUtils} are mirrored except the overloads taking a time
+ * budget, which already return without waiting for a slow load.
+ */
+public class AsyncPackageUtils {
+    private final PackageUtils mUtils;
+    /**
+     * Executor to run calls on.
+     */
+    private final ExecutorService mExecutor;
+
+    /**
+     * Constructs the {@code AsyncPackageUtils}, which runs calls on the
+     * {@link PackageUtils#getExecutor()}.
+     *
+     * @param utils the {@code PackageUtils} to call.
+     */
+    public AsyncPackageUtils(PackageUtils utils) {
+        this(utils, utils.getExecutor());
+    }
+
+    /**
+     * Constructs the {@code AsyncPackageUtils}.
+     *
+     * @param utils    the {@code PackageUtils} to call.
+     * @param executor executor to run calls on.
+     */
+    public AsyncPackageUtils(PackageUtils utils, ExecutorService executor) {
+        mUtils = utils;
+        mExecutor = executor;
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getStringByName(String, String)}.
+     *
+     * @param packageName      package of the application.
+     * @param fullResourceName name of a value in format {@code @string/my_name}.
+     * @return future result of the call.
+     */
+    public PackageFuture<String> getStringByName(final String packageName,
+                                                 final String fullResourceName) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return mUtils.getStringByName(packageName, fullResourceName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getStringByName(int, String)}.
+     *
+     * @param handle           handle of the package from the {@link PackageRegistry}.
+     * @param fullResourceName name of a value in format {@code @string/my_name}.
+     * @return future result of the call.
+     */
+    public PackageFuture<String> getStringByName(final int handle,
+                                                 final String fullResourceName) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return mUtils.getStringByName(handle, fullResourceName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getMetaString(String, String)}.
+     *
+     * @param packageName package of the application.
+     * @param tag         a string tag, meta-data was named with.
+     * @return future result of the call.
+     */
+    public PackageFuture<String> getMetaString(final String packageName, final String tag) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return mUtils.getMetaString(packageName, tag);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getMetaString(int, String)}.
+     *
+     * @param handle handle of the package from the {@link PackageRegistry}.
+     * @param tag    a string tag, meta-data was named with.
+     * @return future result of the call.
+     */
+    public PackageFuture<String> getMetaString(final int handle, final String tag) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return mUtils.getMetaString(handle, tag);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getMetaStringArray(String, String)}.
+     *
+     * @param packageName package of the application.
+     * @param tag         a string tag, meta-data was named with.
+     * @return future result of the call.
+     */
+    public PackageFuture<String[]> getMetaStringArray(final String packageName, final String tag) {
+        return submit(new Callable<String[]>() {
+            @Override
+            public String[] call() {
+                return mUtils.getMetaStringArray(packageName, tag);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getMetaStringArray(int, String)}.
+     *
+     * @param handle handle of the package from the {@link PackageRegistry}.
+     * @param tag    a string tag, meta-data was named with.
+     * @return future result of the call.
+     */
+    public PackageFuture<String[]> getMetaStringArray(final int handle, final String tag) {
+        return submit(new Callable<String[]>() {
+            @Override
+            public String[] call() {
+                return mUtils.getMetaStringArray(handle, tag);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getMetaStrings(Collection, String)}.
+     *
+     * @param packageNames packages of the applications.
+     * @param tag          a string tag, meta-data was named with.
+     * @return future result of the call.
+     */
+    public PackageFuture<List<String>> getMetaStrings(final Collection<String> packageNames,
+                                                     final String tag) {
+        return submit(new Callable<List<String>>() {
+            @Override
+            public List<String> call() {
+                return mUtils.getMetaStrings(packageNames, tag);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#isPackageInstalled(String)}.
+     *
+     * @param packageName package of the application.
+     * @return future result of the call.
+     */
+    public PackageFuture<Boolean> isPackageInstalled(final String packageName) {
+        return submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return mUtils.isPackageInstalled(packageName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#isPackageInstalled(int)}.
+     *
+     * @param handle handle of the package from the {@link PackageRegistry}.
+     * @return future result of the call.
+     */
+    public PackageFuture<Boolean> isPackageInstalled(final int handle) {
+        return submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return mUtils.isPackageInstalled(handle);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#packageInstalled(String)}.
+     *
+     * @param packageName package of the application.
+     * @return future result of the call.
+     */
+    public PackageFuture<Boolean> packageInstalled(final String packageName) {
+        return submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return mUtils.packageInstalled(packageName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#isLaunchable(String)}.
+     *
+     * @param packageName package of the application.
+     * @return future result of the call.
+     */
+    public PackageFuture<Boolean> isLaunchable(final String packageName) {
+        return submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return mUtils.isLaunchable(packageName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getLabel(String)}.
+     *
+     * @param packageName package of the application.
+     * @return future result of the call.
+     */
+    public PackageFuture<String> getLabel(final String packageName) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return mUtils.getLabel(packageName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getResourceString(String, String)}.
+     *
+     * @param packageName  package of the application.
+     * @param resourceName name of the requested resource.
+     * @return future result of the call.
+     */
+    public PackageFuture<String> getResourceString(final String packageName,
+                                                   final String resourceName) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return mUtils.getResourceString(packageName, resourceName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getResourceString(int, String)}.
+     *
+     * @param handle       handle of the package from the {@link PackageRegistry}.
+     * @param resourceName name of the requested resource.
+     * @return future result of the call.
+     */
+    public PackageFuture<String> getResourceString(final int handle,
+                                                   final String resourceName) {
+        return submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return mUtils.getResourceString(handle, resourceName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getResourceStrings(Collection, String)}.
+     *
+     * @param packageNames packages of the applications.
+     * @param resourceName name of the requested resource.
+     * @return future result of the call.
+     */
+    public PackageFuture<List<String>> getResourceStrings(final Collection<String> packageNames,
+                                                         final String resourceName) {
+        return submit(new Callable<List<String>>() {
+            @Override
+            public List<String> call() {
+                return mUtils.getResourceStrings(packageNames, resourceName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getResourceDrawable(String, String)}.
+     *
+     * @param packageName  package of the application.
+     * @param resourceName name of the requested resource.
+     * @return future result of the call.
+     */
+    public PackageFuture<Drawable> getResourceDrawable(final String packageName,
+                                                       final String resourceName) {
+        return submit(new Callable<Drawable>() {
+            @Override
+            public Drawable call() {
+                return mUtils.getResourceDrawable(packageName, resourceName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getIcon(String)}.
+     *
+     * @param packageName package of the application.
+     * @return future result of the call.
+     */
+    public PackageFuture<Drawable> getIcon(final String packageName) {
+        return submit(new Callable<Drawable>() {
+            @Override
+            public Drawable call() {
+                return mUtils.getIcon(packageName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getIcon(int)}.
+     *
+     * @param handle handle of the package from the {@link PackageRegistry}.
+     * @return future result of the call.
+     */
+    public PackageFuture<Drawable> getIcon(final int handle) {
+        return submit(new Callable<Drawable>() {
+            @Override
+            public Drawable call() {
+                return mUtils.getIcon(handle);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getIcons(Collection)}.
+     *
+     * @param packageNames packages of the applications.
+     * @return future result of the call.
+     */
+    public PackageFuture<List<Drawable>> getIcons(final Collection<String> packageNames) {
+        return submit(new Callable<List<Drawable>>() {
+            @Override
+            public List<Drawable> call() {
+                return mUtils.getIcons(packageNames);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getPackages()}.
+     *
+     * @return future result of the call.
+     */
+    public PackageFuture<List<String>> getPackages() {
+        return submit(new Callable<List<String>>() {
+            @Override
+            public List<String> call() {
+                return mUtils.getPackages();
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getPackagesHashes()}.
+     *
+     * @return future result of the call.
+     */
+    public PackageFuture<int[]> getPackagesHashes() {
+        return submit(new Callable<int[]>() {
+            @Override
+            public int[] call() {
+                return mUtils.getPackagesHashes();
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getPackagesFingerprint()}.
+     *
+     * @return future result of the call.
+     */
+    public PackageFuture<Long> getPackagesFingerprint() {
+        return submit(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return mUtils.getPackagesFingerprint();
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getExternalIntent(String)}.
+     *
+     * @param packageName package of the application.
+     * @return future result of the call.
+     */
+    public PackageFuture<Intent> getExternalIntent(final String packageName) {
+        return submit(new Callable<Intent>() {
+            @Override
+            public Intent call() {
+                return mUtils.getExternalIntent(packageName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#getExternalIntent(String, String)}.
+     *
+     * @param packageName package of the application.
+     * @param activity    an activity in the package to launch.
+     * @return future result of the call.
+     */
+    public PackageFuture<Intent> getExternalIntent(final String packageName,
+                                                   final String activity) {
+        return submit(new Callable<Intent>() {
+            @Override
+            public Intent call() {
+                return mUtils.getExternalIntent(packageName, activity);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#isDeletable(String)}.
+     *
+     * @param packageName package of the application.
+     * @return future result of the call.
+     */
+    public PackageFuture<Boolean> isDeletable(final String packageName) {
+        return submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return mUtils.isDeletable(packageName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous {@link PackageUtils#isUpdatedSystemApp(String)}.
+     *
+     * @param packageName package of the application.
+     * @return future result of the call.
+     */
+    public PackageFuture<Boolean> isUpdatedSystemApp(final String packageName) {
+        return submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return mUtils.isUpdatedSystemApp(packageName);
+            }
+        });
+    }
+
+    private <T> PackageFuture<T> submit(Callable<T> call) {
+        return PackageFuture.submit(mExecutor, call);
+    }
+}
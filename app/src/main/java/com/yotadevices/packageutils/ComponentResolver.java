@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import android.content.ComponentName;
+import android.content.pm.ActivityInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code ComponentResolver} resolves explicit activities of applications to
+ * {@code ComponentName}s. Exported activities of every application are queried once, and every
+ * resolved activity, found or not, is cached, so repeated resolutions don't ask the
+ * {@code PackageManager} again until the application is changed.
+ * <br>
+ * Access the resolver through the {@link PackageUtils#getComponentResolver()} method.
+ */
+public class ComponentResolver {
+    /**
+     * {@code PackageUtils} used to query packages and to trace calls.
+     */
+    private final PackageUtils mUtils;
+    /**
+     * Cached activities by package name.
+     */
+    private final Map<String, PackageComponents> mPackages = new ConcurrentHashMap<>();
+    /**
+     * Incremented on every invalidation, so activities queried before it are not cached,
+     * guarded by {@code this}.
+     */
+    private int mGeneration;
+
+    /**
+     * Constructs the {@code ComponentResolver}.
+     *
+     * @param utils {@code PackageUtils} to query packages with.
+     */
+    ComponentResolver(PackageUtils utils) {
+        mUtils = utils;
+    }
+
+    /**
+     * Returns the component of an exported activity of the application.
+     *
+     * @param packageName package of the application.
+     * @param activity    class name of the activity, may be relative to the package like
+     *                    {@code .MainActivity}.
+     * @return the component, or null if there is no such application or exported activity.
+     */
+    public ComponentName resolve(String packageName, String activity) {
+        if (null == packageName || null == activity) return null;
+        PackageComponents components = mPackages.get(packageName);
+        if (null == components) {
+            int generation = getGeneration();
+            components = cache(packageName,
+                    new PackageComponents(packageName, queryExported(packageName)), generation);
+        }
+        return components.resolve(activity);
+    }
+
+    /**
+     * Forgets the cached activities of a package, e.g. when the package was updated.
+     *
+     * @param packageName package of the application.
+     */
+    public synchronized void invalidate(String packageName) {
+        mGeneration++;
+        mPackages.remove(packageName);
+    }
+
+    /**
+     * Forgets all the cached activities.
+     */
+    public synchronized void clear() {
+        mGeneration++;
+        mPackages.clear();
+    }
+
+    /**
+     * Returns the estimated size of the cached activities.
+     *
+     * @return size in bytes.
+     */
+    long getSize() {
+        long size = 0;
+        for (PackageComponents components : mPackages.values()) {
+            size += components.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * Forgets all the cached activities, e.g. under memory pressure.
+     *
+     * @return estimated size of the forgotten activities in bytes.
+     */
+    long trim() {
+        long size = getSize();
+        clear();
+        return size;
+    }
+
+    private synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Caches queried activities unless a package was invalidated during the query, returns the
+     * activities cached for the package.
+     */
+    private synchronized PackageComponents cache(String packageName,
+                                                 PackageComponents components, int generation) {
+        if (generation != mGeneration) return components;
+        PackageComponents cached = mPackages.get(packageName);
+        if (null != cached) return cached;
+        mPackages.put(packageName, components);
+        return components;
+    }
+
+    /**
+     * Returns class names of the exported activities, empty if there is no such application.
+     */
+    private Set<String> queryExported(String packageName) {
+        try {
+            ActivityInfo[] activities = mUtils.queryPackageInfo(packageName,
+                    PackageManager.GET_ACTIVITIES).activities;
+            if (null == activities) return Collections.emptySet();
+            Set<String> exported = new HashSet<>(activities.length);
+            for (ActivityInfo activity : activities) {
+                if (activity.exported) exported.add(activity.name);
+            }
+            return exported;
+        } catch (NameNotFoundException e) {
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * Exported activities of a single package with the activities resolved in them.
+     */
+    private static final class PackageComponents {
+        private final String mPackageName;
+        /**
+         * Class names of the exported activities.
+         */
+        private final Set<String> mExported;
+        /**
+         * Resolved components by requested name, null for not found ones. Guarded by
+         * {@code this}.
+         */
+        private final Map<String, ComponentName> mResolved = new HashMap<>();
+
+        PackageComponents(String packageName, Set<String> exported) {
+            mPackageName = packageName;
+            mExported = exported;
+        }
+
+        synchronized ComponentName resolve(String activity) {
+            if (mResolved.containsKey(activity)) return mResolved.get(activity);
+            String className = activity.startsWith(".") ? mPackageName + activity : activity;
+            ComponentName component = mExported.contains(className)
+                    ? new ComponentName(mPackageName, className)
+                    : null;
+            mResolved.put(activity, component);
+            return component;
+        }
+
+        synchronized long getSize() {
+            long size = PackageCacheManager.OBJECT_SIZE;
+            for (String name : mExported) {
+                size += PackageCacheManager.ENTRY_SIZE + PackageCacheManager.sizeOf(name);
+            }
+            for (Map.Entry<String, ComponentName> entry : mResolved.entrySet()) {
+                size += PackageCacheManager.ENTRY_SIZE
+                        + PackageCacheManager.sizeOf(entry.getKey())
+                        + (null == entry.getValue() ? 0L : PackageCacheManager.OBJECT_SIZE);
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import android.graphics.drawable.Drawable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The {@code DeadlineLoader} runs loads on a background executor and waits for them no longer
+ * than a given time budget. If a load does not fit into the budget, the last value loaded for
+ * the same key or a placeholder is returned instead, the load is finished in the background and
+ * the caller is notified with its result. Loads of the same key are not duplicated.
+ * <br>
+ * A {@code Drawable} keeps mutable state, e.g. bounds and callbacks, so every caller receives
+ * its own {@code Drawable} created from the {@code ConstantState} of the loaded one.
+ */
+public class DeadlineLoader {
+    /**
+     * Receives values, which were not loaded within the time budget.
+     *
+     * @param <T> type of the loaded value.
+     */
+    public interface Callback<T> {
+        /**
+         * Called on a background thread when the load is finished. It is not called if the
+         * load fails, the caller keeps the value it was given then.
+         *
+         * @param packageName package of the application the value belongs to.
+         * @param value       the loaded value.
+         */
+        void onLoaded(String packageName, T value);
+    }
+
+    /**
+     * Executor to run loads on.
+     */
+    private final Executor mExecutor;
+    /**
+     * Last loaded values by key, guarded by {@code this}.
+     */
+    private final Map<Key, Object> mValues = new HashMap<>();
+    /**
+     * Loads in progress by key, guarded by {@code this}.
+     */
+    private final Map<Key, Load<?>> mLoads = new HashMap<>();
+
+    /**
+     * Constructs the {@code DeadlineLoader}.
+     *
+     * @param executor executor to run loads on.
+     */
+    public DeadlineLoader(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Loads a value within the time budget.
+     *
+     * @param kind         kind of the value, e.g. a name of the method loading it.
+     * @param packageName  package of the application the value belongs to, not null.
+     * @param name         name of the value within the application, may be null.
+     * @param budgetMillis time to wait for the load, in milliseconds.
+     * @param placeholder  value to return if the load is late and there is no last value.
+     * @param loader       loads the value.
+     * @param callback     notified with the value if the load is late, may be null.
+     * @param <T>          type of the value.
+     * @return the loaded value, or if the load is late, the last loaded value or the placeholder.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T load(String kind, String packageName, String name, long budgetMillis,
+                      T placeholder, Callable<T> loader, Callback<T> callback) {
+        Key key = new Key(kind, packageName, name);
+        Load<T> load;
+        synchronized (this) {
+            load = (Load<T>) mLoads.get(key);
+            if (null == load) {
+                load = new Load<>(key, loader);
+                mLoads.put(key, load);
+                mExecutor.execute(load);
+            }
+        }
+        try {
+            return copyOf(load.get(budgetMillis, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // fall through to the last value
+        }
+        synchronized (this) {
+            if (!load.mFinished && null != callback) {
+                load.mCallbacks.add(callback);
+            }
+            T value = (T) mValues.get(key);
+            return null == value ? placeholder : copyOf(value);
+        }
+    }
+
+    /**
+     * Returns a new {@code Drawable} sharing the constant state of a loaded one, so callers do
+     * not share a single instance. Values of other types are returned as is.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T copyOf(T value) {
+        if (!(value instanceof Drawable)) return value;
+        Drawable.ConstantState state = ((Drawable) value).getConstantState();
+        return null == state ? value : (T) state.newDrawable();
+    }
+
+    /**
+     * Forgets the last values of a package, e.g. when the package was updated. Values of loads
+     * in progress for the package are not stored when they finish.
+     *
+     * @param packageName package of the application.
+     */
+    public synchronized void invalidate(String packageName) {
+        for (Iterator<Key> iterator = mValues.keySet().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().mPackageName.equals(packageName)) iterator.remove();
+        }
+        for (Iterator<Key> iterator = mLoads.keySet().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().mPackageName.equals(packageName)) iterator.remove();
+        }
+    }
+
+    /**
+     * Forgets all the last values.
+     */
+    public synchronized void clear() {
+        mValues.clear();
+        mLoads.clear();
+    }
+
+    /**
+     * Returns the estimated size of the last values of the kinds.
+     *
+     * @param kinds kinds of the values.
+     * @return size in bytes.
+     */
+    synchronized long getSize(String... kinds) {
+        long size = 0;
+        for (Map.Entry<Key, Object> entry : mValues.entrySet()) {
+            if (Arrays.asList(kinds).contains(entry.getKey().mKind)) {
+                size += PackageCacheManager.ENTRY_SIZE
+                        + PackageCacheManager.sizeOf(entry.getValue());
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Forgets the last values of the kinds, e.g. under memory pressure.
+     *
+     * @param kinds kinds of the values.
+     * @return estimated size of the forgotten values in bytes.
+     */
+    synchronized long trim(String... kinds) {
+        long size = 0;
+        for (Iterator<Map.Entry<Key, Object>> iterator = mValues.entrySet().iterator();
+             iterator.hasNext(); ) {
+            Map.Entry<Key, Object> entry = iterator.next();
+            if (Arrays.asList(kinds).contains(entry.getKey().mKind)) {
+                size += PackageCacheManager.ENTRY_SIZE
+                        + PackageCacheManager.sizeOf(entry.getValue());
+                iterator.remove();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Identifies a loaded value.
+     */
+    private static final class Key {
+        private final String mKind;
+        private final String mPackageName;
+        private final String mName;
+
+        Key(String kind, String packageName, String name) {
+            mKind = kind;
+            mPackageName = packageName;
+            mName = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return mKind.equals(key.mKind) && mPackageName.equals(key.mPackageName)
+                    && (null == mName ? null == key.mName : mName.equals(key.mName));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mKind.hashCode();
+            result = 31 * result + mPackageName.hashCode();
+            return 31 * result + (null == mName ? 0 : mName.hashCode());
+        }
+    }
+
+    /**
+     * A load in progress, which keeps its value and notifies late callers when finished.
+     */
+    private final class Load<T> extends FutureTask<T> {
+        private final Key mKey;
+        /**
+         * Callers, which did not wait for the value, guarded by the {@code DeadlineLoader}.
+         */
+        private final List<Callback<T>> mCallbacks = new ArrayList<>(1);
+        /**
+         * Whether the value was stored and callbacks were taken for notification, guarded by
+         * the {@code DeadlineLoader}.
+         */
+        private boolean mFinished;
+
+        Load(Key key, Callable<T> loader) {
+            super(loader);
+            mKey = key;
+        }
+
+        @Override
+        protected void done() {
+            T value = null;
+            List<Callback<T>> callbacks;
+            synchronized (DeadlineLoader.this) {
+                boolean current = this == mLoads.get(mKey);
+                if (current) mLoads.remove(mKey);
+                try {
+                    value = get();
+                    if (current) mValues.put(mKey, value);
+                    callbacks = new ArrayList<>(mCallbacks);
+                } catch (InterruptedException | ExecutionException e) {
+                    // the last value is kept and callers keep what they were given
+                    callbacks = Collections.emptyList();
+                }
+                mFinished = true;
+            }
+            for (Callback<T> callback : callbacks) {
+                callback.onLoaded(mKey.mPackageName, copyOf(value));
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import android.os.Bundle;
+
+import java.util.Arrays;
+
+/**
+ * The {@code MetaDataStore} keeps a projection of applications' {@code meta-data}: only values
+ * of the tags declared at construction are extracted from a {@code Bundle} into a compact
+ * immutable {@link Entry}, the {@code Bundle} itself is not retained. Entries are kept in an
+ * array indexed by package handles of a {@link PackageRegistry}.
+ */
+public class MetaDataStore {
+    /**
+     * Index returned for tags, which are not projected.
+     */
+    public static final int NO_INDEX = -1;
+    /**
+     * Registry, whose handles index the {@link #mEntries}.
+     */
+    private final PackageRegistry mRegistry;
+    /**
+     * Projected tags, an index of a tag is an index of its value in every {@link Entry}.
+     */
+    private final String[] mTags;
+    /**
+     * Entries by package handle. Reassigned after every change, so readers always see the
+     * entries written before.
+     */
+    private volatile Entry[] mEntries = new Entry[0];
+    /**
+     * Incremented on every removal, so entries loaded before it are not put, guarded by
+     * {@code this}.
+     */
+    private int mGeneration;
+
+    /**
+     * Constructs the {@code MetaDataStore}.
+     *
+     * @param registry registry to get package handles from.
+     * @param tags     the tags of {@code meta-data} to keep.
+     */
+    public MetaDataStore(PackageRegistry registry, String... tags) {
+        mRegistry = registry;
+        mTags = tags.clone();
+    }
+
+    /**
+     * Returns an index of the tag in entries of this store.
+     *
+     * @param tag a string tag, meta-data was named with.
+     * @return index of the tag, or {@link #NO_INDEX} if the tag is not projected.
+     */
+    public int indexOf(String tag) {
+        for (int i = 0; i < mTags.length; i++) {
+            if (mTags[i].equals(tag)) return i;
+        }
+        return NO_INDEX;
+    }
+
+    /**
+     * Returns the projected tags.
+     *
+     * @return copy of the tags this store was constructed with.
+     */
+    public String[] getTags() {
+        return mTags.clone();
+    }
+
+    /**
+     * Returns the entry of a package.
+     *
+     * @param handle handle of the application's package.
+     * @return the entry, or null if it was not put into the store.
+     */
+    public Entry get(int handle) {
+        Entry[] entries = mEntries;
+        return handle < entries.length ? entries[handle] : null;
+    }
+
+    /**
+     * Returns the generation of the store, take it before loading an entry to put.
+     *
+     * @return the current generation.
+     */
+    public synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Puts an entry of a package into the store, unless an entry was removed since the entry
+     * was loaded, because the loaded one may be stale then.
+     *
+     * @param handle     handle of the application's package.
+     * @param entry      the entry, created with {@link #project(Bundle)}.
+     * @param generation the {@link #getGeneration()} taken before the entry was loaded.
+     * @return true if the entry was put, false if it was dropped.
+     */
+    public synchronized boolean put(int handle, Entry entry, int generation) {
+        if (generation != mGeneration) return false;
+        Entry[] entries = mEntries;
+        if (handle >= entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(handle + 1, entries.length * 2));
+        }
+        entries[handle] = entry;
+        mEntries = entries;
+        return true;
+    }
+
+    /**
+     * Removes an entry of a package, e.g. when the package was updated.
+     *
+     * @param packageName package of the application.
+     */
+    public synchronized void remove(String packageName) {
+        mGeneration++;
+        int handle = mRegistry.getHandle(packageName);
+        Entry[] entries = mEntries;
+        if (PackageRegistry.NO_HANDLE != handle && handle < entries.length) {
+            entries[handle] = null;
+            mEntries = entries;
+        }
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public synchronized void clear() {
+        mGeneration++;
+        mEntries = new Entry[0];
+    }
+
+    /**
+     * Returns the estimated size of the entries.
+     *
+     * @return size in bytes.
+     */
+    long getSize() {
+        Entry[] entries = mEntries;
+        long size = 4L * entries.length;
+        for (Entry entry : entries) {
+            if (null != entry) size += entry.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * Removes all the entries, e.g. under memory pressure.
+     *
+     * @return estimated size of the removed entries in bytes.
+     */
+    synchronized long trim() {
+        long size = getSize();
+        clear();
+        return size;
+    }
+
+    /**
+     * Extracts values of the projected tags from an application's {@code meta-data}. Every value
+     * is read once and kept according to its type, so typed getters of the {@code Bundle} are
+     * not called for values of other types, which they would log as a {@code ClassCastException}.
+     *
+     * @param metaData {@code meta-data} of the application, may be null.
+     * @return the entry containing projected values.
+     */
+    public Entry project(Bundle metaData) {
+        if (null == metaData) return Entry.NO_META_DATA;
+        String[] strings = new String[mTags.length];
+        int[] resources = new int[mTags.length];
+        for (int i = 0; i < mTags.length; i++) {
+            Object value = metaData.get(mTags[i]);
+            if (value instanceof String) {
+                strings[i] = (String) value;
+            } else if (value instanceof Integer) {
+                resources[i] = (Integer) value;
+            }
+        }
+        return new Entry(strings, resources);
+    }
+
+    /**
+     * The {@code Entry} holds projected {@code meta-data} values of a single application.
+     */
+    public static final class Entry {
+        /**
+         * Entry of an application, which is not installed.
+         */
+        public static final Entry NOT_INSTALLED = new Entry(null, null);
+        /**
+         * Entry of an application without {@code meta-data}.
+         */
+        public static final Entry NO_META_DATA  = new Entry(null, null);
+        /**
+         * String values of projected tags.
+         */
+        private final String[] mStrings;
+        /**
+         * Resource ids of projected tags.
+         */
+        private final int[] mResources;
+
+        /**
+         * Constructs the {@code Entry}, arrays are not copied.
+         *
+         * @param strings   string values of projected tags.
+         * @param resources resource ids of projected tags.
+         */
+        Entry(String[] strings, int[] resources) {
+            mStrings = strings;
+            mResources = resources;
+        }
+
+        /**
+         * Returns the estimated size of the entry.
+         *
+         * @return size in bytes, 0 for shared entries.
+         */
+        long getSize() {
+            if (null == mStrings) return 0L;
+            long size = 3 * PackageCacheManager.OBJECT_SIZE + 8L * mStrings.length;
+            for (String string : mStrings) {
+                size += PackageCacheManager.sizeOf(string);
+            }
+            return size;
+        }
+
+        /**
+         * Returns whether the application has {@code meta-data} or not.
+         *
+         * @return true if the application is installed and has {@code meta-data}.
+         */
+        public boolean hasMetaData() {
+            return null != mStrings;
+        }
+
+        /**
+         * Returns a string value of a tag.
+         *
+         * @param index index of the tag, see {@link MetaDataStore#indexOf(String)}.
+         * @return the value, or null if there is no such value.
+         */
+        public String getString(int index) {
+            return null == mStrings ? null : mStrings[index];
+        }
+
+        /**
+         * Returns a resource id of a tag.
+         *
+         * @param index index of the tag, see {@link MetaDataStore#indexOf(String)}.
+         * @return the resource id, or 0 if there is no such value.
+         */
+        public int getResource(int index) {
+            return null == mResources ? 0 : mResources[index];
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+/**
+ * The {@code PackageCacheManager} sheds the caches of {@link PackageUtils} under memory
+ * pressure. Caches are ordered in tiers from the most expensive to hold and cheapest to rebuild
+ * to the cheapest to hold, and higher trim levels shed more tiers:
+ * <ol>
+ * <li>{@link #TIER_DRAWABLES}: decoded drawables, e.g. icons;</li>
+ * <li>{@link #TIER_RESOURCES}: {@code Resources} of applications;</li>
+ * <li>{@link #TIER_VALUES}: loaded strings;</li>
+ * <li>{@link #TIER_META_DATA}: projected {@code meta-data} and decoded labels;</li>
+ * <li>{@link #TIER_IDS}: resolved resource ids and activities.</li>
+ * </ol>
+ * If a snapshot was loaded with {@link PackageUtils#loadSnapshot(java.io.File)}, it is the disk
+ * tier: shed {@code meta-data} and labels of its packages are decoded from the mapped file
+ * again instead of being queried from the {@code PackageManager}.
+ * <br>
+ * Sizes are estimates, they are meant to compare tiers and to report the trend of reclaimed
+ * memory, not to account every byte. Register the manager with
+ * {@code Context#registerComponentCallbacks(ComponentCallbacks)} to react to trim-memory levels.
+ */
+public class PackageCacheManager implements ComponentCallbacks2 {
+    /**
+     * Tier of decoded drawables.
+     */
+    public static final int TIER_DRAWABLES = 0;
+    /**
+     * Tier of {@code Resources} of applications.
+     */
+    public static final int TIER_RESOURCES = 1;
+    /**
+     * Tier of loaded strings.
+     */
+    public static final int TIER_VALUES    = 2;
+    /**
+     * Tier of projected {@code meta-data} and decoded labels.
+     */
+    public static final int TIER_META_DATA = 3;
+    /**
+     * Tier of resolved resource ids and activities.
+     */
+    public static final int TIER_IDS       = 4;
+    /**
+     * Number of tiers.
+     */
+    public static final int TIER_COUNT     = 5;
+    /**
+     * Estimated size of an object header with a few fields.
+     */
+    static final long OBJECT_SIZE          = 16L;
+    /**
+     * Estimated size of a hash map entry with a boxed value.
+     */
+    static final long ENTRY_SIZE           = 48L;
+    /**
+     * Estimated size of {@code Resources} of an application with its {@code AssetManager}.
+     */
+    static final long RESOURCES_SIZE       = 32L * 1024L;
+
+    /**
+     * A cache of a tier.
+     */
+    interface Tier {
+        /**
+         * Returns the estimated size of the cache.
+         *
+         * @return size in bytes.
+         */
+        long getSize();
+
+        /**
+         * Sheds the cache.
+         *
+         * @return estimated size of the shed data in bytes.
+         */
+        long trim();
+    }
+
+    /**
+     * Caches by tier.
+     */
+    private final Tier[] mTiers;
+    /**
+     * Total size of shed data, guarded by {@code this}.
+     */
+    private long mReclaimed;
+
+    /**
+     * Constructs the {@code PackageCacheManager}.
+     *
+     * @param tiers caches in the order of tiers.
+     */
+    PackageCacheManager(Tier... tiers) {
+        if (TIER_COUNT != tiers.length) {
+            throw new IllegalArgumentException("Expected " + TIER_COUNT + " tiers");
+        }
+        mTiers = tiers.clone();
+    }
+
+    /**
+     * Returns the estimated size of a tier.
+     *
+     * @param tier the tier, e.g. {@link #TIER_DRAWABLES}.
+     * @return size in bytes.
+     */
+    public long getSize(int tier) {
+        return mTiers[tier].getSize();
+    }
+
+    /**
+     * Returns the estimated size of all the tiers.
+     *
+     * @return size in bytes.
+     */
+    public long getSize() {
+        long size = 0;
+        for (Tier tier : mTiers) {
+            size += tier.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * Sheds the first tiers.
+     *
+     * @param count number of tiers to shed, from 0 to {@link #TIER_COUNT}.
+     * @return estimated size of the shed data in bytes.
+     */
+    public long trim(int count) {
+        long reclaimed = 0;
+        for (int i = 0; i < Math.min(count, TIER_COUNT); i++) {
+            reclaimed += mTiers[i].trim();
+        }
+        synchronized (this) {
+            mReclaimed += reclaimed;
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Sheds tiers in order until the estimated size of the rest fits into the budget.
+     *
+     * @param maxBytes the budget in bytes.
+     * @return estimated size of the shed data in bytes.
+     */
+    public long trimToSize(long maxBytes) {
+        long size = getSize();
+        long reclaimed = 0;
+        for (int i = 0; i < TIER_COUNT && size > maxBytes; i++) {
+            long trimmed = mTiers[i].trim();
+            reclaimed += trimmed;
+            size -= trimmed;
+        }
+        synchronized (this) {
+            mReclaimed += reclaimed;
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Returns the estimated total size of the data shed since the manager was created.
+     *
+     * @return size in bytes.
+     */
+    public synchronized long getReclaimedBytes() {
+        return mReclaimed;
+    }
+
+    /**
+     * Returns the number of tiers to shed at a trim-memory level. The number never decreases
+     * with the level: the {@code RUNNING_*} levels shed one to three tiers while the process
+     * is in the foreground, the UI hidden level sheds as much as the critical running one, the
+     * background levels shed {@code meta-data} as well and the complete level sheds everything.
+     *
+     * @param level level of {@link ComponentCallbacks2#onTrimMemory(int)}.
+     * @return number of tiers, see {@link #trim(int)}.
+     */
+    public static int getTierCount(int level) {
+        if (level >= TRIM_MEMORY_COMPLETE) return TIER_COUNT;
+        if (level >= TRIM_MEMORY_BACKGROUND) return TIER_META_DATA + 1;
+        if (level >= TRIM_MEMORY_RUNNING_CRITICAL) return TIER_VALUES + 1;
+        if (level >= TRIM_MEMORY_RUNNING_LOW) return TIER_RESOURCES + 1;
+        if (level >= TRIM_MEMORY_RUNNING_MODERATE) return TIER_DRAWABLES + 1;
+        return 0;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        trim(getTierCount(level));
+    }
+
+    @Override
+    public void onLowMemory() {
+        trim(TIER_COUNT);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) { /* NOP */ }
+
+    /**
+     * Returns the estimated size of a cached value.
+     */
+    static long sizeOf(Object value) {
+        if (value instanceof String) return sizeOf((String) value);
+        if (value instanceof String[]) {
+            String[] strings = (String[]) value;
+            long size = OBJECT_SIZE + 4L * strings.length;
+            for (String string : strings) {
+                size += sizeOf(string);
+            }
+            return size;
+        }
+        if (value instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) value).getBitmap();
+            if (null != bitmap) return OBJECT_SIZE + bitmap.getByteCount();
+        }
+        if (value instanceof Drawable) {
+            Drawable drawable = (Drawable) value;
+            long pixels = (long) drawable.getIntrinsicWidth() * drawable.getIntrinsicHeight();
+            return OBJECT_SIZE + (pixels > 0 ? 4L * pixels : 0L);
+        }
+        return null == value ? 0L : OBJECT_SIZE;
+    }
+
+    /**
+     * Returns the estimated size of a string.
+     */
+    static long sizeOf(String value) {
+        return null == value ? 0L : OBJECT_SIZE + 2L * value.length();
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The {@code PackageFanOut} runs the same query for many packages in parallel. A collection of
+ * packages is split recursively over a work-stealing {@code ForkJoinPool}, and the number of
+ * queries executed at the same time is limited, so that the {@code system_server} is not flooded
+ * with binder calls. Results are returned in the order of the given packages. A thread waiting
+ * for the limit is not replaced, but the query itself runs as a
+ * {@code ForkJoinPool.ManagedBlocker}, so the pool grows by at most one thread per running query.
+ */
+public class PackageFanOut {
+    /**
+     * A query to run for every package, e.g. a call of some {@code PackageUtils} method.
+     *
+     * @param <T> type of the result of the query.
+     */
+    public interface Query<T> {
+        /**
+         * Runs the query for a single package.
+         *
+         * @param packageName package of the application to query.
+         * @return result of the query.
+         */
+        T query(String packageName);
+    }
+
+    /**
+     * Pool, which runs the queries.
+     */
+    private final ForkJoinPool mPool;
+    /**
+     * Limits the number of queries executed at the same time.
+     */
+    private final Semaphore mInFlight;
+
+    /**
+     * Constructs the {@code PackageFanOut}, which uses all available processors and executes at
+     * most one query per processor at the same time.
+     */
+    public PackageFanOut() {
+        this(Runtime.getRuntime().availableProcessors(),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs the {@code PackageFanOut}.
+     *
+     * @param parallelism number of threads to run queries on.
+     * @param maxInFlight maximum number of queries executed at the same time.
+     */
+    public PackageFanOut(int parallelism, int maxInFlight) {
+        if (parallelism < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Parallelism and max in-flight queries must be"
+                    + " positive: " + parallelism + ", " + maxInFlight);
+        }
+        mPool = new ForkJoinPool(parallelism);
+        mInFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Starts the query for all the given packages. The returned task may be cancelled, in that
+     * case queries, which were not started yet, are skipped.
+     *
+     * @param packageNames packages of the applications to query.
+     * @param query        the query to run for every package.
+     * @param <T>          type of the result of the query.
+     * @return the task, whose result is the list of query results in the order of packages.
+     */
+    public <T> ForkJoinTask<List<T>> submit(Collection<String> packageNames, Query<T> query) {
+        return mPool.submit(new FanOutTask<>(
+                packageNames.toArray(new String[packageNames.size()]), query));
+    }
+
+    /**
+     * Runs the query for all the given packages and waits for the results.
+     *
+     * @param packageNames packages of the applications to query.
+     * @param query        the query to run for every package.
+     * @param <T>          type of the result of the query.
+     * @return the list of query results in the order of packages.
+     */
+    public <T> List<T> invoke(Collection<String> packageNames, Query<T> query) {
+        return submit(packageNames, query).join();
+    }
+
+    /**
+     * Stops accepting new queries, already submitted queries are finished.
+     */
+    public void shutdown() {
+        mPool.shutdown();
+    }
+
+    /**
+     * The root task, which collects results of all the queries.
+     */
+    private class FanOutTask<T> extends RecursiveTask<List<T>> {
+        private final String[] mPackageNames;
+        private final Query<T> mQuery;
+        private final Object[] mResults;
+
+        FanOutTask(String[] packageNames, Query<T> query) {
+            mPackageNames = packageNames;
+            mQuery = query;
+            mResults = new Object[packageNames.length];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected List<T> compute() {
+            new Slice(0, mPackageNames.length).invoke();
+            return Collections.unmodifiableList((List<T>) Arrays.asList(mResults));
+        }
+
+        /**
+         * Runs queries for packages from {@code mFrom} inclusive to {@code mTo} exclusive,
+         * splitting the range while it contains more than one package.
+         */
+        private class Slice extends RecursiveAction {
+            private final int mFrom;
+            private final int mTo;
+
+            Slice(int from, int to) {
+                mFrom = from;
+                mTo = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (mTo - mFrom > 1) {
+                    int middle = (mFrom + mTo) >>> 1;
+                    invokeAll(new Slice(mFrom, middle), new Slice(middle, mTo));
+                } else if (mTo > mFrom && !FanOutTask.this.isCancelled()) {
+                    mInFlight.acquireUninterruptibly();
+                    try {
+                        ForkJoinPool.managedBlock(new Leaf(mFrom));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        mInFlight.release();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Runs the query for a single package, the caller holds a permit of {@code mInFlight}.
+         */
+        private class Leaf implements ForkJoinPool.ManagedBlocker {
+            private final int mIndex;
+            private boolean mDone;
+
+            Leaf(int index) {
+                mIndex = index;
+            }
+
+            @Override
+            public boolean block() {
+                mResults[mIndex] = mQuery.query(mPackageNames[mIndex]);
+                mDone = true;
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return mDone;
+            }
+        }
+    }
+}
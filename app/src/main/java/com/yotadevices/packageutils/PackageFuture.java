@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The {@code PackageFuture} is a result of an asynchronous {@code PackageUtils} call, which can
+ * notify callbacks and be chained with other calls without blocking a thread in between.
+ * Cancellation of a chained future is propagated to the call, which is currently running.
+ * <br>
+ * It covers the part of {@code java.util.concurrent.CompletableFuture} used with
+ * {@link AsyncPackageUtils}, which is not available before API 24.
+ *
+ * @param <T> type of the result.
+ */
+public class PackageFuture<T> implements Future<T> {
+    /**
+     * Receives the result of a future.
+     *
+     * @param <T> type of the result.
+     */
+    public interface Callback<T> {
+        /**
+         * Called when the future is completed with a value.
+         *
+         * @param value the result.
+         */
+        void onSuccess(T value);
+
+        /**
+         * Called when the future is completed with an error or cancelled.
+         *
+         * @param error the error, or a {@code CancellationException} if the future was cancelled.
+         */
+        void onFailure(Throwable error);
+    }
+
+    /**
+     * Transforms the result of a future.
+     *
+     * @param <A> type of the result.
+     * @param <R> type of the transformed result.
+     */
+    public interface Function<A, R> {
+        R apply(A value) throws Exception;
+    }
+
+    /**
+     * Transforms the result of a future into another asynchronous call.
+     *
+     * @param <A> type of the result.
+     * @param <R> type of the result of the asynchronous call.
+     */
+    public interface AsyncFunction<A, R> {
+        PackageFuture<R> apply(A value) throws Exception;
+    }
+
+    /**
+     * Runs callbacks on the thread, which completes the future.
+     */
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Listeners to run on completion, guarded by {@code this}, null after completion.
+     */
+    private List<Runnable> mListeners = new ArrayList<>(1);
+    /**
+     * The running computation of the result, cancelled with this future. Guarded by
+     * {@code this}.
+     */
+    private Future<?> mUpstream;
+    private boolean mDone;
+    private boolean mCancelled;
+    private T mValue;
+    private Throwable mError;
+
+    /**
+     * Runs a call on the executor.
+     *
+     * @param executor executor to run the call on.
+     * @param call     the call.
+     * @param <T>      type of the result.
+     * @return future result of the call.
+     */
+    public static <T> PackageFuture<T> submit(ExecutorService executor, final Callable<T> call) {
+        final PackageFuture<T> future = new PackageFuture<>();
+        future.setUpstream(executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isDone()) return;
+                try {
+                    future.complete(call.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }));
+        return future;
+    }
+
+    /**
+     * Completes the future with a value, unless it is already completed.
+     *
+     * @param value the result.
+     * @return true if the future was completed by this call.
+     */
+    public boolean complete(T value) {
+        return finish(value, null, false);
+    }
+
+    /**
+     * Completes the future with an error, unless it is already completed.
+     *
+     * @param error the error.
+     * @return true if the future was completed by this call.
+     * @throws NullPointerException if the error is null.
+     */
+    public boolean completeExceptionally(Throwable error) {
+        if (null == error) throw new NullPointerException("error is null");
+        return finish(null, error, false);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        Future<?> upstream;
+        List<Runnable> listeners;
+        synchronized (this) {
+            upstream = mUpstream;
+            listeners = setResult(null, new CancellationException(), true);
+        }
+        if (null == listeners) return false;
+        if (null != upstream) upstream.cancel(mayInterruptIfRunning);
+        runListeners(listeners);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mDone;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!mDone) wait();
+        return getResult();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!mDone) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) throw new TimeoutException();
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    /**
+     * Notifies the callback on the executor when the future is completed. If the future is
+     * already completed, the callback is notified immediately.
+     *
+     * @param callback the callback.
+     * @param executor executor to notify the callback on, e.g. one posting to the main thread.
+     */
+    public void addCallback(final Callback<? super T> callback, Executor executor) {
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                T value;
+                Throwable error;
+                synchronized (PackageFuture.this) {
+                    value = mValue;
+                    error = mError;
+                }
+                if (null != error) {
+                    callback.onFailure(error);
+                } else {
+                    callback.onSuccess(value);
+                }
+            }
+        }, executor);
+    }
+
+    /**
+     * Returns a future of the transformed result. The function is applied on the thread, which
+     * completes this future.
+     *
+     * @param function the transformation.
+     * @param <R>      type of the transformed result.
+     * @return future of the transformed result.
+     */
+    public <R> PackageFuture<R> then(final Function<? super T, ? extends R> function) {
+        final PackageFuture<R> result = new PackageFuture<>();
+        result.setUpstream(this);
+        addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                try {
+                    result.complete(function.apply(value));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                result.completeExceptionally(error);
+            }
+        }, DIRECT);
+        return result;
+    }
+
+    /**
+     * Returns a future of the asynchronous call started with the result of this future. The
+     * call is started on the thread, which completes this future, and no thread is blocked
+     * until the call is finished. Cancelling the returned future cancels the call, which is
+     * currently running.
+     *
+     * @param function starts the next asynchronous call.
+     * @param <R>      type of the result of the next call.
+     * @return future of the next call.
+     */
+    public <R> PackageFuture<R> thenCompose(final AsyncFunction<? super T, R> function) {
+        final PackageFuture<R> result = new PackageFuture<>();
+        result.setUpstream(this);
+        addCallback(new Callback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                PackageFuture<R> next;
+                try {
+                    next = function.apply(value);
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                result.setUpstream(next);
+                next.addCallback(new Callback<R>() {
+                    @Override
+                    public void onSuccess(R value) {
+                        result.complete(value);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable error) {
+                        result.completeExceptionally(error);
+                    }
+                }, DIRECT);
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                result.completeExceptionally(error);
+            }
+        }, DIRECT);
+        return result;
+    }
+
+    private void addListener(final Runnable listener, final Executor executor) {
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(listener);
+            }
+        };
+        synchronized (this) {
+            if (!mDone) {
+                mListeners.add(task);
+                return;
+            }
+        }
+        task.run();
+    }
+
+    /**
+     * Sets the computation to cancel with this future, cancels it if this future is already
+     * cancelled.
+     */
+    private void setUpstream(Future<?> upstream) {
+        boolean cancelled;
+        synchronized (this) {
+            mUpstream = upstream;
+            cancelled = mCancelled;
+        }
+        if (cancelled) upstream.cancel(true);
+    }
+
+    private boolean finish(T value, Throwable error, boolean cancelled) {
+        List<Runnable> listeners;
+        synchronized (this) {
+            listeners = setResult(value, error, cancelled);
+        }
+        if (null == listeners) return false;
+        runListeners(listeners);
+        return true;
+    }
+
+    /**
+     * Completes the future, the caller holds the lock of {@code this}. The upstream is cleared
+     * in the same critical section, so a caller cancelling the future reads the last upstream,
+     * and one set later is cancelled by {@link #setUpstream(Future)}.
+     *
+     * @return listeners to run after the lock is released, or null if the future is already
+     * completed.
+     */
+    private List<Runnable> setResult(T value, Throwable error, boolean cancelled) {
+        if (mDone) return null;
+        mDone = true;
+        mCancelled = cancelled;
+        mValue = value;
+        mError = error;
+        List<Runnable> listeners = mListeners;
+        mListeners = null;
+        mUpstream = null;
+        notifyAll();
+        return listeners;
+    }
+
+    private static void runListeners(List<Runnable> listeners) {
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    private T getResult() throws ExecutionException {
+        if (mCancelled) throw new CancellationException();
+        if (null != mError) throw new ExecutionException(mError);
+        return mValue;
+    }
+}
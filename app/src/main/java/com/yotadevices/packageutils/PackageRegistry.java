@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code PackageRegistry} interns package names to dense {@code int} handles, starting
+ * from zero. Handles never change during the life of the registry, so caches may keep their
+ * values in plain arrays indexed by handle instead of maps keyed by package name.
+ */
+public class PackageRegistry {
+    /**
+     * Handle returned for packages, which were not registered.
+     */
+    public static final int NO_HANDLE           = -1;
+    /**
+     * Initial capacity of the {@link #mNames} array.
+     */
+    private static final int INITIAL_CAPACITY   = 64;
+    /**
+     * Handles of registered packages by package name.
+     */
+    private final ConcurrentHashMap<String, Integer> mHandles = new ConcurrentHashMap<>();
+    /**
+     * Registered package names by handle. Reassigned after every registration, so readers
+     * always see the names written before.
+     */
+    private volatile String[] mNames = new String[INITIAL_CAPACITY];
+    /**
+     * Number of registered packages, guarded by {@code this}.
+     */
+    private int mSize;
+
+    /**
+     * Returns the handle of a package, registering the package if it was not registered yet.
+     *
+     * @param packageName package of the application.
+     * @return handle of the package.
+     */
+    public int register(String packageName) {
+        Integer handle = mHandles.get(packageName);
+        if (null != handle) return handle;
+        synchronized (this) {
+            handle = mHandles.get(packageName);
+            if (null != handle) return handle;
+            String[] names = mNames;
+            if (mSize == names.length) {
+                names = Arrays.copyOf(names, names.length * 2);
+            }
+            names[mSize] = packageName;
+            mNames = names;
+            mHandles.put(packageName, mSize);
+            return mSize++;
+        }
+    }
+
+    /**
+     * Returns the handle of a package without registering it.
+     *
+     * @param packageName package of the application.
+     * @return handle of the package, or {@link #NO_HANDLE} if it was not registered.
+     */
+    public int getHandle(String packageName) {
+        Integer handle = mHandles.get(packageName);
+        return null == handle ? NO_HANDLE : handle;
+    }
+
+    /**
+     * Returns the package name, which was registered with the given handle.
+     *
+     * @param handle handle returned by {@link #register(String)}.
+     * @return package of the application.
+     * @throws IllegalArgumentException if there is no package with such handle.
+     */
+    public String getPackageName(int handle) {
+        String[] names = mNames;
+        String packageName = handle >= 0 && handle < names.length ? names[handle] : null;
+        if (null == packageName) {
+            throw new IllegalArgumentException("No package registered with handle " + handle);
+        }
+        return packageName;
+    }
+
+    /**
+     * Returns the number of registered packages. All handles are less than this number.
+     *
+     * @return number of registered packages.
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+}
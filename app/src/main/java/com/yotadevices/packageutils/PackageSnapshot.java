@@ -0,0 +1,470 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The {@code PackageSnapshot} is a persisted copy of package data, which is used to answer
+ * queries at process start before the {@code PackageManager} is asked. It keeps package names,
+ * flags, version codes, last update times, labels and projected {@code meta-data} in a compact
+ * versioned binary file.
+ * <br>
+ * The file is memory-mapped on load. Only package names and fixed-size fields are read eagerly,
+ * labels and {@code meta-data} are decoded on the first access. Packages are validated against
+ * their {@code lastUpdateTime} lazily by {@link PackageUtils}, see
+ * {@link PackageUtils#loadSnapshot(File)}. Labels are localized, so they are used only while
+ * the default locale is the one the snapshot was written with.
+ * <br>
+ * File format, all numbers are big-endian:
+ * <pre>
+ * int    magic, 'PKGS'
+ * int    version, {@link #VERSION}
+ * string locale of the labels as a BCP 47 language tag
+ * int    number of tags, followed by tags as strings
+ * int    number of packages, followed by packages:
+ *   string package name
+ *   int    ApplicationInfo#flags
+ *   int    versionCode
+ *   long   lastUpdateTime
+ *   int    size of the rest of the package in bytes
+ *   string label
+ *   byte   1 if the application has meta-data, followed by a string and an int per tag
+ * </pre>
+ * A string is an unsigned short length in bytes, or 0xffff for null, followed by UTF-8 bytes.
+ */
+public class PackageSnapshot {
+    /**
+     * Version of the file format. Files of other versions are not loaded.
+     */
+    public static final int VERSION = 2;
+    /**
+     * First bytes of a snapshot file, 'PKGS'.
+     */
+    private static final int MAGIC = 0x504b4753;
+    /**
+     * Length of a null string.
+     */
+    private static final int NULL_LENGTH = 0xffff;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Locale of the labels.
+     */
+    private final Locale mLocale;
+    /**
+     * Tags of the projected {@code meta-data}, see {@link MetaDataStore}.
+     */
+    private final String[] mTags;
+    /**
+     * Packages, which were not found outdated yet, by name.
+     */
+    private final Map<String, Record> mRecords;
+
+    private PackageSnapshot(Locale locale, String[] tags, Map<String, Record> records) {
+        mLocale = locale;
+        mTags = tags;
+        mRecords = records;
+    }
+
+    /**
+     * Loads a snapshot file.
+     *
+     * @param file the file, written by {@link PackageUtils#saveSnapshot(File)}.
+     * @return the snapshot.
+     * @throws IOException if the file cannot be read, is corrupted or has another version.
+     */
+    public static PackageSnapshot load(File file) throws IOException {
+        ByteBuffer buffer;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (MAGIC != buffer.getInt()) throw new IOException("Not a snapshot: " + file);
+            int version = buffer.getInt();
+            if (VERSION != version) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            String languageTag = readString(buffer);
+            if (null == languageTag) throw new IOException("Corrupted snapshot: " + file);
+            Locale locale = Locale.forLanguageTag(languageTag);
+            String[] tags = new String[buffer.getInt()];
+            for (int i = 0; i < tags.length; i++) {
+                tags[i] = readString(buffer);
+            }
+            int count = buffer.getInt();
+            Map<String, Record> records = new ConcurrentHashMap<>(count);
+            for (int i = 0; i < count; i++) {
+                String packageName = readString(buffer);
+                int flags = buffer.getInt();
+                int versionCode = buffer.getInt();
+                long lastUpdateTime = buffer.getLong();
+                int size = buffer.getInt();
+                records.put(packageName, new Record(packageName, flags, versionCode,
+                        lastUpdateTime, buffer, buffer.position(), tags.length));
+                buffer.position(buffer.position() + size);
+            }
+            return new PackageSnapshot(locale, tags, records);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Corrupted snapshot: " + file, e);
+        }
+    }
+
+    /**
+     * Writes a snapshot file. The file is synced and replaced atomically, so neither a snapshot
+     * being loaded nor one left after a crash is seen half-written.
+     *
+     * @param file    the file.
+     * @param locale  locale of the labels of the records.
+     * @param tags    tags of the projected {@code meta-data} of the records.
+     * @param records the packages.
+     * @throws IOException if the file cannot be written.
+     */
+    static void write(File file, Locale locale, String[] tags, List<Record> records)
+            throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        ByteArrayOutputStream details = new ByteArrayOutputStream();
+        DataOutputStream detailsOutput = new DataOutputStream(details);
+        try (FileOutputStream fileOutput = new FileOutputStream(temporary);
+             DataOutputStream output = new DataOutputStream(
+                     new BufferedOutputStream(fileOutput))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            writeString(output, locale.toLanguageTag());
+            output.writeInt(tags.length);
+            for (String tag : tags) {
+                writeString(output, tag);
+            }
+            output.writeInt(records.size());
+            for (Record record : records) {
+                writeString(output, record.mPackageName);
+                output.writeInt(record.mFlags);
+                output.writeInt(record.mVersionCode);
+                output.writeLong(record.mLastUpdateTime);
+                details.reset();
+                writeString(detailsOutput, record.mLabel);
+                MetaDataStore.Entry metaData = record.mMetaData;
+                detailsOutput.writeByte(metaData.hasMetaData() ? 1 : 0);
+                if (metaData.hasMetaData()) {
+                    for (int i = 0; i < tags.length; i++) {
+                        writeString(detailsOutput, metaData.getString(i));
+                        detailsOutput.writeInt(metaData.getResource(i));
+                    }
+                }
+                output.writeInt(details.size());
+                details.writeTo(output);
+            }
+            output.flush();
+            fileOutput.getFD().sync();
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    /**
+     * Returns whether the snapshot has a package or not. A package is dropped from the snapshot
+     * when it is found changed since the snapshot was written.
+     *
+     * @param packageName package of the application.
+     * @return true if the package is in the snapshot.
+     */
+    public boolean contains(String packageName) {
+        return mRecords.containsKey(packageName);
+    }
+
+    /**
+     * Returns the locale of the labels of the snapshot.
+     *
+     * @return the locale the snapshot was written with.
+     */
+    public Locale getLocale() {
+        return mLocale;
+    }
+
+    /**
+     * Returns number of packages in the snapshot.
+     *
+     * @return number of packages, which were not dropped.
+     */
+    public int size() {
+        return mRecords.size();
+    }
+
+    /**
+     * Returns the estimated size of the decoded labels and {@code meta-data}.
+     *
+     * @return size in bytes.
+     */
+    long getSize() {
+        long size = 0;
+        for (Record record : mRecords.values()) {
+            size += record.getDecodedSize();
+        }
+        return size;
+    }
+
+    /**
+     * Forgets the decoded labels and {@code meta-data}, they are decoded from the mapped file
+     * again on the next request.
+     *
+     * @return estimated size of the forgotten data in bytes.
+     */
+    long trim() {
+        long size = 0;
+        for (Record record : mRecords.values()) {
+            size += record.release();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the record of a package.
+     *
+     * @param packageName package of the application.
+     * @return the record, or null if the package is not in the snapshot.
+     */
+    Record get(String packageName) {
+        return mRecords.get(packageName);
+    }
+
+    /**
+     * Drops a package, e.g. when the package was updated.
+     *
+     * @param packageName package of the application.
+     */
+    void remove(String packageName) {
+        mRecords.remove(packageName);
+    }
+
+    /**
+     * Returns projected {@code meta-data} of a record for the tags of a store.
+     *
+     * @param record the record.
+     * @param store  the store to put the entry to.
+     * @return the entry, or null if the snapshot doesn't have some of the store's tags.
+     */
+    MetaDataStore.Entry getMetaData(Record record, MetaDataStore store) {
+        MetaDataStore.Entry entry = record.getMetaData();
+        if (null == entry || !entry.hasMetaData()) return entry;
+        String[] tags = store.getTags();
+        if (Arrays.equals(tags, mTags)) return entry;
+        String[] strings = new String[tags.length];
+        int[] resources = new int[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            int index = Arrays.asList(mTags).indexOf(tags[i]);
+            if (MetaDataStore.NO_INDEX == index) return null;
+            strings[i] = entry.getString(index);
+            resources[i] = entry.getResource(index);
+        }
+        return new MetaDataStore.Entry(strings, resources);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xffff;
+        if (NULL_LENGTH == length) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (null == value) {
+            output.writeShort(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        if (bytes.length >= NULL_LENGTH) {
+            throw new IOException("String is too long: " + bytes.length + " bytes");
+        }
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * The {@code Record} holds data of a single package.
+     */
+    static final class Record {
+        private final String mPackageName;
+        private final int mFlags;
+        private final int mVersionCode;
+        private final long mLastUpdateTime;
+        /**
+         * Mapped file to decode the label and {@code meta-data} from, null if they are given.
+         */
+        private final ByteBuffer mBuffer;
+        /**
+         * Position of the label in the {@link #mBuffer}.
+         */
+        private final int mOffset;
+        /**
+         * Number of tags of the snapshot.
+         */
+        private final int mTagCount;
+        /**
+         * Whether the package is being validated or was validated.
+         */
+        private final AtomicBoolean mValidated = new AtomicBoolean();
+        /**
+         * Whether the {@link #mLabel} and {@link #mMetaData} are decoded, guarded by
+         * {@code this}.
+         */
+        private boolean mDecoded;
+        private String mLabel;
+        private MetaDataStore.Entry mMetaData;
+
+        /**
+         * Constructs the {@code Record} to write.
+         *
+         * @param packageName    package of the application.
+         * @param flags          {@code ApplicationInfo#flags} of the application.
+         * @param versionCode    version code of the package.
+         * @param lastUpdateTime last update time of the package.
+         * @param label          label of the application.
+         * @param metaData       projected {@code meta-data} of the application.
+         */
+        Record(String packageName, int flags, int versionCode, long lastUpdateTime,
+               String label, MetaDataStore.Entry metaData) {
+            this(packageName, flags, versionCode, lastUpdateTime, null, 0, 0);
+            mDecoded = true;
+            mLabel = label;
+            mMetaData = metaData;
+        }
+
+        private Record(String packageName, int flags, int versionCode, long lastUpdateTime,
+                       ByteBuffer buffer, int offset, int tagCount) {
+            mPackageName = packageName;
+            mFlags = flags;
+            mVersionCode = versionCode;
+            mLastUpdateTime = lastUpdateTime;
+            mBuffer = buffer;
+            mOffset = offset;
+            mTagCount = tagCount;
+        }
+
+        String getPackageName() {
+            return mPackageName;
+        }
+
+        int getFlags() {
+            return mFlags;
+        }
+
+        int getVersionCode() {
+            return mVersionCode;
+        }
+
+        long getLastUpdateTime() {
+            return mLastUpdateTime;
+        }
+
+        /**
+         * Returns the label of the application.
+         *
+         * @return the label, or null if it cannot be decoded.
+         */
+        synchronized String getLabel() {
+            decode();
+            return mLabel;
+        }
+
+        /**
+         * Returns projected {@code meta-data} for the tags of the snapshot.
+         *
+         * @return the entry, or null if it cannot be decoded.
+         */
+        synchronized MetaDataStore.Entry getMetaData() {
+            decode();
+            return mMetaData;
+        }
+
+        /**
+         * Marks the record as validated.
+         *
+         * @return true if the record was not validated before.
+         */
+        boolean startValidation() {
+            return mValidated.compareAndSet(false, true);
+        }
+
+        /**
+         * Returns the estimated size of the decoded label and {@code meta-data}.
+         *
+         * @return size in bytes, 0 if they are not decoded.
+         */
+        synchronized long getDecodedSize() {
+            if (!mDecoded || null == mBuffer) return 0L;
+            long size = PackageCacheManager.sizeOf(mLabel);
+            return null == mMetaData ? size : size + mMetaData.getSize();
+        }
+
+        /**
+         * Forgets the decoded label and {@code meta-data}, records built to be written are kept.
+         *
+         * @return estimated size of the forgotten data in bytes.
+         */
+        synchronized long release() {
+            long size = getDecodedSize();
+            if (null != mBuffer) {
+                mDecoded = false;
+                mLabel = null;
+                mMetaData = null;
+            }
+            return size;
+        }
+
+        private void decode() {
+            if (mDecoded) return;
+            mDecoded = true;
+            ByteBuffer buffer = mBuffer.duplicate();
+            try {
+                buffer.position(mOffset);
+                String label = readString(buffer);
+                MetaDataStore.Entry metaData = MetaDataStore.Entry.NO_META_DATA;
+                if (0 != buffer.get()) {
+                    String[] strings = new String[mTagCount];
+                    int[] resources = new int[mTagCount];
+                    for (int i = 0; i < mTagCount; i++) {
+                        strings[i] = readString(buffer);
+                        resources[i] = buffer.getInt();
+                    }
+                    metaData = new MetaDataStore.Entry(strings, resources);
+                }
+                mLabel = label;
+                mMetaData = metaData;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                // corrupted, the data is queried from the PackageManager instead
+            }
+        }
+    }
+}
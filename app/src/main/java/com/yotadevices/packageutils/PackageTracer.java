@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import android.os.Process;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The {@code PackageTracer} records begin and end events of {@code PackageUtils} methods and of
+ * {@code PackageManager} and {@code Resources} calls made by them. Events are written into a
+ * lock-free ring buffer, so only the latest events are kept, and can be exported in the Chrome
+ * trace-event JSON format to be inspected in {@code chrome://tracing} or Perfetto.
+ * <br>
+ * Pass the tracer to {@link PackageUtils#setTracer(PackageTracer)} to enable tracing.
+ */
+public class PackageTracer {
+    /**
+     * Category of {@code PackageUtils} methods.
+     */
+    public static final String CATEGORY_PACKAGE_UTILS   = "PackageUtils";
+    /**
+     * Category of {@code PackageManager} calls.
+     */
+    public static final String CATEGORY_PACKAGE_MANAGER = "PackageManager";
+    /**
+     * Category of {@code Resources} calls.
+     */
+    public static final String CATEGORY_RESOURCES       = "Resources";
+    /**
+     * Default number of events kept by the tracer.
+     */
+    public static final int DEFAULT_CAPACITY            = 4096;
+    /**
+     * Chrome trace-event phase of a begin event.
+     */
+    private static final char PHASE_BEGIN               = 'B';
+    /**
+     * Chrome trace-event phase of an end event.
+     */
+    private static final char PHASE_END                 = 'E';
+    /**
+     * Mask to get a slot of an event from its sequence number.
+     */
+    private final int mMask;
+    /**
+     * Sequence number of the next event.
+     */
+    private final AtomicLong mCursor = new AtomicLong();
+    /**
+     * The latest event in each slot. An event is immutable and is published by a single write,
+     * so an exported event never mixes fields of two events.
+     */
+    private final AtomicReferenceArray<Event> mEvents;
+
+    /**
+     * Constructs the {@code PackageTracer}, which keeps {@link #DEFAULT_CAPACITY} events.
+     */
+    public PackageTracer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs the {@code PackageTracer}.
+     *
+     * @param capacity number of the latest events to keep, rounded up to a power of two.
+     */
+    public PackageTracer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity is out of range: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        mMask = size - 1;
+        mEvents = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * Records the beginning of a span on the current thread.
+     *
+     * @param category    category of the span, e.g. {@link #CATEGORY_PACKAGE_MANAGER}.
+     * @param name        name of the span, usually a method name.
+     * @param packageName package the span is related to, may be null.
+     */
+    public void begin(String category, String name, String packageName) {
+        record(PHASE_BEGIN, category, name, packageName);
+    }
+
+    /**
+     * Records the end of a span, which was begun on the current thread.
+     *
+     * @param category    category of the span.
+     * @param name        name of the span.
+     * @param packageName package the span is related to, may be null.
+     */
+    public void end(String category, String name, String packageName) {
+        record(PHASE_END, category, name, packageName);
+    }
+
+    private void record(char phase, String category, String name, String packageName) {
+        long timestamp = System.nanoTime();
+        long sequence = mCursor.getAndIncrement();
+        int slot = (int) sequence & mMask;
+        Event event = new Event(sequence, phase, category, name, packageName, timestamp,
+                Process.myTid());
+        // a writer, which is a capacity behind, must not replace a newer event
+        Event current;
+        do {
+            current = mEvents.get(slot);
+            if (null != current && current.mSequence > sequence) return;
+        } while (!mEvents.compareAndSet(slot, current, event));
+    }
+
+    /**
+     * Writes the kept events as a Chrome trace-event JSON object. Events, which are overwritten
+     * while exporting, are skipped.
+     *
+     * @param writer the writer to write JSON to.
+     * @throws IOException if the writer fails.
+     */
+    public void writeChromeTrace(Writer writer) throws IOException {
+        int pid = Process.myPid();
+        long end = mCursor.get();
+        long start = Math.max(0L, end - mMask - 1);
+        boolean first = true;
+        writer.write("{\"traceEvents\":[");
+        for (long sequence = start; sequence < end; sequence++) {
+            Event event = mEvents.get((int) sequence & mMask);
+            if (null == event || event.mSequence != sequence) continue;
+
+            writer.write(first ? "\n{\"name\":" : ",\n{\"name\":");
+            first = false;
+            writeString(writer, event.mName);
+            writer.write(",\"cat\":");
+            writeString(writer, event.mCategory);
+            writer.write(",\"ph\":\"");
+            writer.write(event.mPhase);
+            writer.write("\",\"ts\":");
+            writer.write(Long.toString(event.mTimestamp / 1000));
+            writer.write(",\"pid\":");
+            writer.write(Integer.toString(pid));
+            writer.write(",\"tid\":");
+            writer.write(Integer.toString(event.mThread));
+            if (null != event.mPackageName) {
+                writer.write(",\"args\":{\"package\":");
+                writeString(writer, event.mPackageName);
+                writer.write('}');
+            }
+            writer.write('}');
+        }
+        writer.write("\n]}\n");
+        writer.flush();
+    }
+
+    /**
+     * Returns the kept events as a Chrome trace-event JSON object.
+     *
+     * @return JSON string, see {@link #writeChromeTrace(Writer)}.
+     */
+    public String toChromeTrace() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeChromeTrace(writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // StringWriter never throws
+        }
+        return writer.toString();
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        if (null == value) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            if ('"' == c || '\\' == c) {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * A single recorded event.
+     */
+    private static final class Event {
+        private final long mSequence;
+        private final char mPhase;
+        private final String mCategory;
+        private final String mName;
+        private final String mPackageName;
+        private final long mTimestamp;
+        private final int mThread;
+
+        Event(long sequence, char phase, String category, String name, String packageName,
+              long timestamp, int thread) {
+            mSequence = sequence;
+            mPhase = phase;
+            mCategory = category;
+            mName = name;
+            mPackageName = packageName;
+            mTimestamp = timestamp;
+            mThread = thread;
+        }
+    }
+}
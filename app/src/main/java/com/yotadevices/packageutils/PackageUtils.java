@@ -16,9 +16,11 @@
 package com.yotadevices.packageutils;
 
 import android.content.ActivityNotFoundException;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Resources;
@@ -27,8 +29,19 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The {@code PackageUtils} contains methods to get an information about installed applications
@@ -36,6 +49,13 @@ import java.util.List;
  * Access all methods through the {@link #getInstance()} method. To initialize the
  * {@code PackageUtils} you should call the {@link #instantiate(PackageManager)} instead of
  * using the constructor.
+ * <br>
+ * {@code Resources} of applications, resolved resource ids, projected {@code meta-data} and
+ * the packages fingerprint are cached for the life of the process. The caches are not
+ * refreshed on their own: call {@link #onPackageChanged(String)} whenever an application is
+ * installed, updated or removed, otherwise e.g. {@link #getResourceString(String, String)},
+ * {@link #getResourceDrawable(String, String)} and {@link #getMetaStringArray(String, String)}
+ * keep serving values of the old version of the application.
  *
  * @author Vitalii Dmitriev
  */
@@ -63,6 +83,26 @@ public class PackageUtils {
      * The type of value to get from the resources of the application is a {@code Drawable}.
      */
     public static final String TYPE_DRAWABLE    = "drawable";
+    /**
+     * The type of value to get from the resources of the application is a color.
+     */
+    public static final String TYPE_COLOR       = "color";
+    /**
+     * The type of value to get from the resources of the application is a dimension.
+     */
+    public static final String TYPE_DIMEN       = "dimen";
+    /**
+     * The type of value to get from the resources of the application is an {@code int}.
+     */
+    public static final String TYPE_INTEGER     = "integer";
+    /**
+     * The type of value to get from the resources of the application is a {@code boolean}.
+     */
+    public static final String TYPE_BOOL        = "bool";
+    /**
+     * The type of value to get from the resources of the application is an array.
+     */
+    public static final String TYPE_ARRAY       = "array";
     /**
      * Marks that a string contains some value name like {@code @string/my_name}.
      */
@@ -82,18 +122,82 @@ public class PackageUtils {
      * An empty {@link String} instance.
      */
     public static final String EMPTY_STRING     = "";
-     /**
-     * Index of a resource's type after using {@link String#split(String)} with {@link #DELIMITER}.
+    /**
+     * Number of threads of the {@link #getExecutor()}.
      */
-    private static final int TYPE               = 0;
+    private static final int IO_THREADS         = 4;
     /**
-     * Index of a resource's name after using {@link String#split(String)} with {@link #DELIMITER}.
+     * Time an idle thread of the {@link #getExecutor()} is kept alive, in seconds.
      */
-    private static final int TEXT               = 1;
+    private static final long IO_KEEP_ALIVE     = 30L;
+    /**
+     * Index returned by {@link String#indexOf(String)} if there is no such substring.
+     */
+    private static final int NOT_FOUND          = -1;
+    /**
+     * Kind of deadline-aware loads of icons, see {@link DeadlineLoader}.
+     */
+    private static final String LOAD_ICON            = "getIcon";
+    /**
+     * Kind of deadline-aware loads of {@code meta-data} strings.
+     */
+    private static final String LOAD_META_STRING     = "getMetaString";
+    /**
+     * Kind of deadline-aware loads of resource strings.
+     */
+    private static final String LOAD_RESOURCE_STRING = "getResourceString";
     /**
      * {@code PackageManager}, used in most methods.
      */
     private PackageManager mPackageManager;
+    /**
+     * Fingerprint of the installed packages, see {@link #getPackagesFingerprint()}.
+     */
+    private final PackagesFingerprint mFingerprint = new PackagesFingerprint();
+    /**
+     * Whether the {@link #mFingerprint} was filled with all the installed packages.
+     */
+    private boolean mFingerprintReady;
+    /**
+     * Runs bulk queries in parallel, created on the first use.
+     */
+    private PackageFanOut mFanOut;
+    /**
+     * Interns package names to {@code int} handles.
+     */
+    private final PackageRegistry mRegistry = new PackageRegistry();
+    /**
+     * Projected {@code meta-data} of applications, see {@link #setMetaDataProjection(String...)}.
+     */
+    private volatile MetaDataStore mMetaData;
+    /**
+     * Records calls of {@code PackageUtils} methods if set, see {@link #setTracer(PackageTracer)}.
+     */
+    private volatile PackageTracer mTracer;
+    /**
+     * Runs background loads, created on the first use.
+     */
+    private ExecutorService mExecutor;
+    /**
+     * Runs deadline-aware loads, created on the first use.
+     */
+    private DeadlineLoader mDeadlineLoader;
+    /**
+     * Resolves typed resources of applications and caches them.
+     */
+    private final ResourceResolver mResolver = new ResourceResolver(this);
+    /**
+     * Resolves explicit activities of applications and caches them.
+     */
+    private final ComponentResolver mComponents = new ComponentResolver(this);
+    /**
+     * Package data persisted by a previous process, see {@link #loadSnapshot(File)}.
+     */
+    private volatile PackageSnapshot mSnapshot;
+    /**
+     * Sheds the caches under memory pressure.
+     */
+    private final PackageCacheManager mCacheManager = createCacheManager();
 
     /**
      * To initialize the {@code PackageUtils} call {@link #instantiate(PackageManager)}.
@@ -108,7 +212,7 @@ public class PackageUtils {
      * @return true if the name is valid resource name, false otherwise.
      */
     public static boolean isValidResourceName(String fullName) {
-        return null != fullName && fullName.matches(RES_NAME_REG_EXP);
+        return null != fullName && NOT_FOUND != indexOfDelimiter(fullName);
     }
 
     /**
@@ -119,10 +223,9 @@ public class PackageUtils {
      * or an empty string if the given name is invalid.
      */
     public static String parseResourceType(String fullName) {
-        if (isValidResourceName(fullName)) {
-            return fullName.split(DELIMITER)[TYPE]
-                    .replace(ANDROID_URI, EMPTY_STRING)
-                    .substring(1); // 0th symbol is '@', don't need it
+        int delimiter = null == fullName ? NOT_FOUND : indexOfDelimiter(fullName);
+        if (NOT_FOUND != delimiter) {
+            return fullName.substring(indexOfType(fullName), delimiter);
         }
         return EMPTY_STRING;
     }
@@ -135,12 +238,53 @@ public class PackageUtils {
      * or an empty string if the given name is invalid.
      */
     public static String parseResourceName(String fullName) {
-        if (isValidResourceName(fullName)) {
-            return fullName.split(DELIMITER)[TEXT];
+        int delimiter = null == fullName ? NOT_FOUND : indexOfDelimiter(fullName);
+        if (NOT_FOUND != delimiter) {
+            return fullName.substring(delimiter + DELIMITER.length());
         }
         return EMPTY_STRING;
     }
 
+    /**
+     * Returns an index of the {@link #DELIMITER} in a resource name, which matches the
+     * {@link #RES_NAME_REG_EXP}. The name is scanned without allocations, so it's cheap to call
+     * for every lookup.
+     */
+    private static int indexOfDelimiter(String fullName) {
+        if (!fullName.startsWith(AT)) return NOT_FOUND;
+        int type = indexOfType(fullName);
+        int delimiter = fullName.indexOf(DELIMITER, type);
+        if (NOT_FOUND == delimiter || !isWord(fullName, type, delimiter)
+                || !isWord(fullName, delimiter + DELIMITER.length(), fullName.length())) {
+            return NOT_FOUND;
+        }
+        return delimiter;
+    }
+
+    /**
+     * Returns an index of a resource's type in a resource name, which starts with {@link #AT}.
+     */
+    private static int indexOfType(String fullName) {
+        return fullName.startsWith(ANDROID_URI, AT.length())
+                ? AT.length() + ANDROID_URI.length()
+                : AT.length();
+    }
+
+    /**
+     * Checks whether a part of a string is not empty and consists of {@code \w} characters.
+     */
+    private static boolean isWord(String value, int start, int end) {
+        if (start >= end) return false;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                    || '_' == c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Initializes the {@code PackageUtils} and returns its instance.
      *
@@ -204,10 +348,28 @@ public class PackageUtils {
      * the given name is incorrect.
      */
     public String getStringByName(String packageName, String fullResourceName) {
-        if (null != fullResourceName && fullResourceName.contains(AT)) {
-            return getResourceString(packageName, parseResourceName(fullResourceName));
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getStringByName", packageName);
+        try {
+            if (null != fullResourceName && fullResourceName.contains(AT)) {
+                return getResourceString(packageName, parseResourceName(fullResourceName));
+            }
+            return fullResourceName;
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getStringByName", packageName);
         }
-        return fullResourceName;
+    }
+
+    /**
+     * Returns a string from the {@code res/values} directory by its name.
+     * The {@link PackageRegistry#NO_HANDLE} is treated as a package, which is not installed.
+     *
+     * @param handle           handle of the application's package in the {@link #getRegistry()}.
+     * @param fullResourceName name of a value to get in format {@code @string/my_name}.
+     * @return see {@link #getStringByName(String, String)}.
+     * @throws IllegalArgumentException if no package was registered with the handle.
+     */
+    public String getStringByName(int handle, String fullResourceName) {
+        return getStringByName(getPackageName(handle), fullResourceName);
     }
 
     /**
@@ -226,13 +388,77 @@ public class PackageUtils {
      * if there is neither such application nor meta-data, nor resource.
      */
     public String getMetaString(String packageName, String tag) {
+        if (null == packageName) return EMPTY_STRING;
+        return getMetaString(PackageRegistry.NO_HANDLE, packageName, tag);
+    }
+
+    /**
+     * Returns the {@code String} resource, given in {@code meta-data} of the application.
+     * The {@link PackageRegistry#NO_HANDLE} is treated as a package, which is not installed.
+     *
+     * @param handle handle of the application's package in the {@link #getRegistry()}.
+     * @param tag    a string tag, meta-data was named with.
+     * @return see {@link #getMetaString(String, String)}.
+     * @throws IllegalArgumentException if no package was registered with the handle.
+     */
+    public String getMetaString(int handle, String tag) {
+        if (PackageRegistry.NO_HANDLE == handle) return EMPTY_STRING;
+        return getMetaString(handle, mRegistry.getPackageName(handle), tag);
+    }
+
+    /**
+     * Returns the {@code String} given in {@code meta-data} of the application, the handle may
+     * be {@link PackageRegistry#NO_HANDLE} if the package was not registered by the caller.
+     */
+    private String getMetaString(int handle, String packageName, String tag) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getMetaString", packageName);
         try {
-            ApplicationInfo info =
-                    mPackageManager.getApplicationInfo(packageName, PackageManager.GET_META_DATA);
-            Bundle meta = info.metaData;
-            return null == meta ? EMPTY_STRING : meta.getString(tag);
-        } catch (NameNotFoundException e) {
-            return EMPTY_STRING;
+            MetaDataStore store = mMetaData;
+            int index = null == store ? MetaDataStore.NO_INDEX : store.indexOf(tag);
+            if (MetaDataStore.NO_INDEX != index) {
+                MetaDataStore.Entry entry = getMetaDataEntry(store, handle, packageName);
+                return entry.hasMetaData() ? entry.getString(index) : EMPTY_STRING;
+            }
+            try {
+                ApplicationInfo info =
+                        queryApplicationInfo(packageName, PackageManager.GET_META_DATA);
+                Bundle meta = info.metaData;
+                return null == meta ? EMPTY_STRING : meta.getString(tag);
+            } catch (NameNotFoundException e) {
+                return EMPTY_STRING;
+            }
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getMetaString", packageName);
+        }
+    }
+
+    /**
+     * Returns the {@code String} given in {@code meta-data} of the application, waiting for it
+     * no longer than the time budget. If the budget is exceeded, the load is finished in the
+     * background and its result is passed to the callback.
+     *
+     * @param packageName  package of the application, whose meta-data is needed.
+     * @param tag          a string tag, meta-data was named with.
+     * @param budgetMillis time to wait for the value, in milliseconds.
+     * @param placeholder  value to return if the budget is exceeded and there is no last value.
+     * @param callback     notified on a background thread if the budget is exceeded, may be null.
+     * @return see {@link #getMetaString(String, String)}, or if the budget is exceeded, the last
+     * loaded value or the placeholder.
+     */
+    public String getMetaString(final String packageName, final String tag, long budgetMillis,
+                                String placeholder, DeadlineLoader.Callback<String> callback) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getMetaString", packageName);
+        try {
+            if (null == packageName) return getMetaString(null, tag);
+            return getDeadlineLoader().load(LOAD_META_STRING, packageName, tag, budgetMillis,
+                    placeholder, new Callable<String>() {
+                        @Override
+                        public String call() {
+                            return getMetaString(packageName, tag);
+                        }
+                    }, callback);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getMetaString", packageName);
         }
     }
 
@@ -249,20 +475,53 @@ public class PackageUtils {
      * if there is neither such application nor meta-data, nor resource.
      */
     public String[] getMetaStringArray(String packageName, String tag) {
+        if (null == packageName) return null;
+        return getMetaStringArray(PackageRegistry.NO_HANDLE, packageName, tag);
+    }
+
+    /**
+     * Returns the {@code String} array resource, given in {@code meta-data} of the application.
+     * The {@link PackageRegistry#NO_HANDLE} is treated as a package, which is not installed.
+     *
+     * @param handle handle of the application's package in the {@link #getRegistry()}.
+     * @param tag    a string tag, meta-data was named with.
+     * @return see {@link #getMetaStringArray(String, String)}.
+     * @throws IllegalArgumentException if no package was registered with the handle.
+     */
+    public String[] getMetaStringArray(int handle, String tag) {
+        if (PackageRegistry.NO_HANDLE == handle) return null;
+        return getMetaStringArray(handle, mRegistry.getPackageName(handle), tag);
+    }
+
+    /**
+     * Returns the {@code String} array given in {@code meta-data} of the application, the handle
+     * may be {@link PackageRegistry#NO_HANDLE} if the package was not registered by the caller.
+     */
+    private String[] getMetaStringArray(int handle, String packageName, String tag) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getMetaStringArray", packageName);
         try {
-            ApplicationInfo info =
-                    mPackageManager.getApplicationInfo(packageName, PackageManager.GET_META_DATA);
-            Bundle meta = info.metaData;
-            if (null != meta) {
-                int id = meta.getInt(tag);
-                Resources apkResource = mPackageManager.getResourcesForApplication(packageName);
-                if (null != apkResource && 0 != id) {
-                    return apkResource.getStringArray(id);
+            int id;
+            MetaDataStore store = mMetaData;
+            int index = null == store ? MetaDataStore.NO_INDEX : store.indexOf(tag);
+            if (MetaDataStore.NO_INDEX != index) {
+                id = getMetaDataEntry(store, handle, packageName).getResource(index);
+            } else {
+                ApplicationInfo info = queryApplicationInfo(packageName,
+                        PackageManager.GET_META_DATA);
+                Bundle meta = info.metaData;
+                id = null == meta ? 0 : meta.getInt(tag);
+            }
+            if (0 != id) {
+                Resources apkResource = mResolver.getResources(packageName);
+                if (null != apkResource) {
+                    return queryStringArray(apkResource, id, packageName);
                 }
             }
             return null;
         } catch (NameNotFoundException | Resources.NotFoundException e) {
             return null;
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getMetaStringArray", packageName);
         }
     }
 
@@ -273,14 +532,31 @@ public class PackageUtils {
      * @return true if application is installed, false otherwise.
      */
     public boolean isPackageInstalled(String packageName) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "isPackageInstalled", packageName);
         try {
-            mPackageManager.getPackageInfo(packageName, PackageManager.GET_ACTIVITIES);
+            if (null == packageName) return false;
+            if (null != getSnapshotRecord(packageName)) return true;
+            queryPackageInfo(packageName, PackageManager.GET_ACTIVITIES);
             return true;
         } catch (NameNotFoundException e) {
             return false;
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "isPackageInstalled", packageName);
         }
     }
 
+    /**
+     * Returns whether an application is installed or not.
+     * The {@link PackageRegistry#NO_HANDLE} is treated as a package, which is not installed.
+     *
+     * @param handle handle of the application's package in the {@link #getRegistry()}.
+     * @return true if application is installed, false otherwise.
+     * @throws IllegalArgumentException if no package was registered with the handle.
+     */
+    public boolean isPackageInstalled(int handle) {
+        return isPackageInstalled(getPackageName(handle));
+    }
+
     /**
      * Can be this package launched or not?
      *
@@ -288,7 +564,37 @@ public class PackageUtils {
      * @return true if the application with this package can be launched, false otherwise.
      */
     public boolean isLaunchable(String packageName) {
-        return null != getExternalIntent(packageName);
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "isLaunchable", packageName);
+        try {
+            return null != getExternalIntent(packageName);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "isLaunchable", packageName);
+        }
+    }
+
+    /**
+     * Returns the label of the application, as it is shown to the user.
+     *
+     * @param packageName package of the application.
+     * @return the label, or null if there is no such application.
+     */
+    public String getLabel(String packageName) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getLabel", packageName);
+        try {
+            PackageSnapshot snapshot = mSnapshot;
+            PackageSnapshot.Record record = getSnapshotRecord(packageName);
+            // labels of the snapshot are stale after a locale change
+            if (null != snapshot && null != record
+                    && snapshot.getLocale().equals(Locale.getDefault())) {
+                String label = record.getLabel();
+                if (null != label) return label;
+            }
+            return queryApplicationLabel(queryApplicationInfo(packageName, 0)).toString();
+        } catch (NameNotFoundException e) {
+            return null;
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getLabel", packageName);
+        }
     }
 
     /**
@@ -300,12 +606,59 @@ public class PackageUtils {
      * if there is neither such application nor resource.
      */
     public String getResourceString(String packageName, String resourceName) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getResourceString", packageName);
         try {
-            Resources apkResource = mPackageManager.getResourcesForApplication(packageName);
-            int id = apkResource.getIdentifier(resourceName, TYPE_STRING, packageName);
-            return apkResource.getString(id);
+            Resources apkResource = mResolver.getResources(packageName);
+            int id = mResolver.getIdentifier(packageName, TYPE_STRING, resourceName);
+            return queryString(apkResource, id, packageName);
         } catch (NameNotFoundException | Resources.NotFoundException e) {
             return resourceName;
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getResourceString", packageName);
+        }
+    }
+
+    /**
+     * Returns the {@code String} value from application's {@code res/values} directory.
+     * The {@link PackageRegistry#NO_HANDLE} is treated as a package, which is not installed.
+     *
+     * @param handle       handle of the application's package in the {@link #getRegistry()}.
+     * @param resourceName name of the requested string.
+     * @return see {@link #getResourceString(String, String)}.
+     * @throws IllegalArgumentException if no package was registered with the handle.
+     */
+    public String getResourceString(int handle, String resourceName) {
+        return getResourceString(getPackageName(handle), resourceName);
+    }
+
+    /**
+     * Returns the {@code String} value from application's {@code res/values} directory, waiting
+     * for it no longer than the time budget. If the budget is exceeded, the load is finished in
+     * the background and its result is passed to the callback.
+     *
+     * @param packageName  package of the application, whose resource is needed.
+     * @param resourceName name of the requested string.
+     * @param budgetMillis time to wait for the value, in milliseconds.
+     * @param placeholder  value to return if the budget is exceeded and there is no last value.
+     * @param callback     notified on a background thread if the budget is exceeded, may be null.
+     * @return see {@link #getResourceString(String, String)}, or if the budget is exceeded, the
+     * last loaded value or the placeholder.
+     */
+    public String getResourceString(final String packageName, final String resourceName,
+                                    long budgetMillis, String placeholder,
+                                    DeadlineLoader.Callback<String> callback) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getResourceString", packageName);
+        try {
+            if (null == packageName) return getResourceString(null, resourceName);
+            return getDeadlineLoader().load(LOAD_RESOURCE_STRING, packageName, resourceName,
+                    budgetMillis, placeholder, new Callable<String>() {
+                        @Override
+                        public String call() {
+                            return getResourceString(packageName, resourceName);
+                        }
+                    }, callback);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getResourceString", packageName);
         }
     }
 
@@ -317,12 +670,15 @@ public class PackageUtils {
      * @return {@code Drawable} image, or null if there is neither such application nor resource.
      */
     public Drawable getResourceDrawable(String packageName, String resourceName) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getResourceDrawable", packageName);
         try {
-            Resources apkResource = mPackageManager.getResourcesForApplication(packageName);
-            int id = apkResource.getIdentifier(resourceName, TYPE_DRAWABLE, packageName);
-            return apkResource.getDrawable(id);
+            Resources apkResource = mResolver.getResources(packageName);
+            int id = mResolver.getIdentifier(packageName, TYPE_DRAWABLE, resourceName);
+            return queryDrawable(apkResource, id, packageName);
         } catch (NameNotFoundException | Resources.NotFoundException e) {
             return null;
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getResourceDrawable", packageName);
         }
     }
 
@@ -334,13 +690,293 @@ public class PackageUtils {
      * if there is no such application or if it has no icon.
      */
     public Drawable getIcon(String packageName) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getIcon", packageName);
         try {
-            return mPackageManager.getApplicationIcon(packageName);
+            if (null == packageName) return null;
+            return queryApplicationIcon(packageName);
         } catch (NameNotFoundException | Resources.NotFoundException e) {
             return null;
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getIcon", packageName);
         }
     }
 
+    /**
+     * Returns an icon of the application as {@code Drawable}.
+     * The {@link PackageRegistry#NO_HANDLE} is treated as a package, which is not installed.
+     *
+     * @param handle handle of the application's package in the {@link #getRegistry()}.
+     * @return see {@link #getIcon(String)}.
+     * @throws IllegalArgumentException if no package was registered with the handle.
+     */
+    public Drawable getIcon(int handle) {
+        return getIcon(getPackageName(handle));
+    }
+
+    /**
+     * Returns an icon of the application, waiting for it no longer than the time budget. If the
+     * budget is exceeded, the load is finished in the background and its result is passed to
+     * the callback.
+     *
+     * @param packageName  the package of the application, whose icon was requested.
+     * @param budgetMillis time to wait for the icon, in milliseconds.
+     * @param placeholder  icon to return if the budget is exceeded and there is no last icon.
+     * @param callback     notified on a background thread if the budget is exceeded, may be null.
+     * @return see {@link #getIcon(String)}, or if the budget is exceeded, the last loaded icon
+     * or the placeholder.
+     */
+    public Drawable getIcon(final String packageName, long budgetMillis, Drawable placeholder,
+                            DeadlineLoader.Callback<Drawable> callback) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getIcon", packageName);
+        try {
+            if (null == packageName) return getIcon(null);
+            return getDeadlineLoader().load(LOAD_ICON, packageName, null, budgetMillis,
+                    placeholder, new Callable<Drawable>() {
+                        @Override
+                        public Drawable call() {
+                            return getIcon(packageName);
+                        }
+                    }, callback);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getIcon", packageName);
+        }
+    }
+
+    /**
+     * Returns icons of the applications, loaded in parallel.
+     *
+     * @param packageNames packages of the applications, whose icons were requested.
+     * @return list of icons in the order of packages, see {@link #getIcon(String)}.
+     */
+    public List<Drawable> getIcons(Collection<String> packageNames) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getIcons", null);
+        try {
+            return getFanOut().invoke(packageNames, new PackageFanOut.Query<Drawable>() {
+                @Override
+                public Drawable query(String packageName) {
+                    return getIcon(packageName);
+                }
+            });
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getIcons", null);
+        }
+    }
+
+    /**
+     * Returns the {@code String}s given in {@code meta-data} of the applications under the same
+     * tag, loaded in parallel.
+     *
+     * @param packageNames packages of the applications, whose meta-data is needed.
+     * @param tag          a string tag, meta-data was named with.
+     * @return list of strings in the order of packages, see {@link #getMetaString(String, String)}.
+     */
+    public List<String> getMetaStrings(Collection<String> packageNames, final String tag) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getMetaStrings", null);
+        try {
+            return getFanOut().invoke(packageNames, new PackageFanOut.Query<String>() {
+                @Override
+                public String query(String packageName) {
+                    return getMetaString(packageName, tag);
+                }
+            });
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getMetaStrings", null);
+        }
+    }
+
+    /**
+     * Returns the {@code String} values with the same name from the applications'
+     * {@code res/values} directories, loaded in parallel.
+     *
+     * @param packageNames packages of the applications, whose resources are needed.
+     * @param resourceName name of the requested string.
+     * @return list of strings in the order of packages,
+     * see {@link #getResourceString(String, String)}.
+     */
+    public List<String> getResourceStrings(Collection<String> packageNames,
+                                           final String resourceName) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getResourceStrings", null);
+        try {
+            return getFanOut().invoke(packageNames, new PackageFanOut.Query<String>() {
+                @Override
+                public String query(String packageName) {
+                    return getResourceString(packageName, resourceName);
+                }
+            });
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getResourceStrings", null);
+        }
+    }
+
+    /**
+     * Declares the {@code meta-data} tags, which are read often. Values of these tags are
+     * extracted once per application and kept in a compact form instead of the whole
+     * {@code meta-data} {@code Bundle}, later {@link #getMetaString(String, String)} and
+     * {@link #getMetaStringArray(String, String)} calls for these tags are served from it.
+     *
+     * @param tags the tags to keep, or nothing to stop keeping any.
+     */
+    public void setMetaDataProjection(String... tags) {
+        mMetaData = null == tags || 0 == tags.length ? null : new MetaDataStore(mRegistry, tags);
+    }
+
+    /**
+     * Enables or disables tracing of {@code PackageUtils} methods and of the
+     * {@code PackageManager} and {@code Resources} calls made by them.
+     *
+     * @param tracer the tracer to record calls to, or null to disable tracing.
+     */
+    public void setTracer(PackageTracer tracer) {
+        mTracer = tracer;
+    }
+
+    /**
+     * Returns the resolver of typed resources like colors, dimensions or integers, which caches
+     * {@code Resources} and resolved ids of applications.
+     *
+     * @return the {@code ResourceResolver} instance.
+     */
+    public ResourceResolver getResolver() {
+        return mResolver;
+    }
+
+    /**
+     * Returns the resolver of explicit activities, which caches exported activities of
+     * applications, see {@link #getExternalIntent(String, String)}.
+     *
+     * @return the {@code ComponentResolver} instance.
+     */
+    public ComponentResolver getComponentResolver() {
+        return mComponents;
+    }
+
+    /**
+     * Returns the registry, which interns package names to {@code int} handles, accepted by
+     * overloads like {@link #getIcon(int)}. Register a package with
+     * {@link PackageRegistry#register(String)} to get its handle.
+     *
+     * @return the {@code PackageRegistry} instance.
+     */
+    public PackageRegistry getRegistry() {
+        return mRegistry;
+    }
+
+    /**
+     * Returns the {@code PackageFanOut} used by bulk methods like {@link #getIcons(Collection)}.
+     * Use it to run other queries over many packages or to submit cancellable queries.
+     *
+     * @return shared {@code PackageFanOut} instance.
+     */
+    public synchronized PackageFanOut getFanOut() {
+        if (null == mFanOut) {
+            mFanOut = new PackageFanOut();
+        }
+        return mFanOut;
+    }
+
+    /**
+     * Returns the shared executor for background loads of package data. It has a bounded
+     * number of daemon threads, which are stopped when idle.
+     *
+     * @return shared {@code ExecutorService} instance.
+     */
+    public synchronized ExecutorService getExecutor() {
+        if (null == mExecutor) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(IO_THREADS, IO_THREADS,
+                    IO_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger mCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable,
+                                    TAG + "-io-" + mCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            mExecutor = executor;
+        }
+        return mExecutor;
+    }
+
+    /**
+     * Returns the manager, which sheds caches of the {@code PackageUtils} under memory pressure.
+     * Register it with {@code Context#registerComponentCallbacks(ComponentCallbacks)} to react
+     * to trim-memory levels.
+     *
+     * @return the {@code PackageCacheManager} instance.
+     */
+    public PackageCacheManager getCacheManager() {
+        return mCacheManager;
+    }
+
+    /**
+     * Loads package data persisted by {@link #saveSnapshot(File)}, so queries are answered
+     * without the {@code PackageManager} at process start. A package of the snapshot is
+     * validated against its {@code lastUpdateTime} in the background on its first request, and
+     * is dropped if it was changed since the snapshot was saved, so the first answers may be
+     * stale for a changed package. Call it before the first query.
+     *
+     * @param file the snapshot file.
+     * @return true if the snapshot was loaded, false if there is no such file or it cannot be
+     * read.
+     */
+    public boolean loadSnapshot(File file) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "loadSnapshot", null);
+        try {
+            if (!file.isFile()) return false;
+            mSnapshot = PackageSnapshot.load(file);
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot load snapshot " + file, e);
+            return false;
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "loadSnapshot", null);
+        }
+    }
+
+    /**
+     * Persists flags, versions, labels and projected {@code meta-data} of the installed
+     * packages to be loaded by {@link #loadSnapshot(File)} at the next start. It queries every
+     * package, so call it on a background thread, e.g. of the {@link #getExecutor()}. Labels
+     * are saved in the default locale and are not used from the snapshot in another locale.
+     *
+     * @param file the snapshot file, replaced atomically.
+     * @throws IOException if the file cannot be written.
+     */
+    public void saveSnapshot(File file) throws IOException {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "saveSnapshot", null);
+        try {
+            MetaDataStore store = mMetaData;
+            MetaDataStore projection = null == store ? new MetaDataStore(mRegistry) : store;
+            Locale locale = Locale.getDefault();
+            List<PackageInfo> packages = queryInstalledPackages(PackageManager.GET_META_DATA);
+            List<PackageSnapshot.Record> records = new ArrayList<>(packages.size());
+            for (PackageInfo info : packages) {
+                ApplicationInfo application = info.applicationInfo;
+                if (null == application) continue;
+                records.add(new PackageSnapshot.Record(info.packageName, application.flags,
+                        info.versionCode, info.lastUpdateTime,
+                        queryApplicationLabel(application).toString(),
+                        projection.project(application.metaData)));
+            }
+            PackageSnapshot.write(file, locale, projection.getTags(), records);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "saveSnapshot", null);
+        }
+    }
+
+    /**
+     * Returns the snapshot loaded by {@link #loadSnapshot(File)}.
+     *
+     * @return the {@code PackageSnapshot} instance, or null if no snapshot was loaded.
+     */
+    public PackageSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
     /**
      * Returns whether an application is installed or not.
      *
@@ -348,11 +984,15 @@ public class PackageUtils {
      * @return true if application is installed, false otherwise.
      */
     public boolean packageInstalled(String packageName) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "packageInstalled", packageName);
         try {
-            mPackageManager.getPackageInfo(packageName, PackageManager.GET_ACTIVITIES);
+            if (null != getSnapshotRecord(packageName)) return true;
+            queryPackageInfo(packageName, PackageManager.GET_ACTIVITIES);
             return true;
         } catch (NameNotFoundException e) {
             return false;
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "packageInstalled", packageName);
         }
     }
 
@@ -362,13 +1002,18 @@ public class PackageUtils {
      * @return {@code List} of {@code String} packages of installed applications.
      */
     public List<String> getPackages() {
-        List<ApplicationInfo> packages
-                = mPackageManager.getInstalledApplications(PackageManager.GET_META_DATA);
-        List<String> resultNames = new ArrayList<>(packages.size());
-        for (ApplicationInfo application : packages) {
-            resultNames.add(application.packageName);
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getPackages", null);
+        try {
+            List<ApplicationInfo> packages
+                    = queryInstalledApplications(PackageManager.GET_META_DATA);
+            List<String> resultNames = new ArrayList<>(packages.size());
+            for (ApplicationInfo application : packages) {
+                resultNames.add(application.packageName);
+            }
+            return resultNames;
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getPackages", null);
         }
-        return resultNames;
     }
 
     /**
@@ -376,14 +1021,80 @@ public class PackageUtils {
      *
      * @return array of hashes of all installed non-system applications.
      * @see #getPackages()
+     * @see #getPackagesFingerprint()
      */
     public int[] getPackagesHashes() {
-        List<String> packageNames = getPackages();
-        int[] resultHashes = new int[packageNames.size()];
-        for (int i = 0; i < resultHashes.length; i++) {
-            resultHashes[i] = packageNames.get(i).hashCode();
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getPackagesHashes", null);
+        try {
+            List<ApplicationInfo> packages
+                    = queryInstalledApplications(PackageManager.GET_META_DATA);
+            int[] resultHashes = new int[packages.size()];
+            for (int i = 0; i < resultHashes.length; i++) {
+                resultHashes[i] = packages.get(i).packageName.hashCode();
+            }
+            return resultHashes;
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getPackagesHashes", null);
+        }
+    }
+
+    /**
+     * Returns an order-independent 64-bit fingerprint of the installed packages, which includes
+     * their version codes and last update times. The first call enumerates all the packages,
+     * later calls return the value kept up to date by {@link #onPackageChanged(String)}.
+     *
+     * @return fingerprint of the installed packages, which may be persisted and compared with
+     * the value after a restart to find out whether anything was changed.
+     * @see PackagesFingerprint
+     */
+    public long getPackagesFingerprint() {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getPackagesFingerprint", null);
+        try {
+            synchronized (mFingerprint) {
+                if (!mFingerprintReady) {
+                    for (PackageInfo info : queryInstalledPackages(0)) {
+                        mFingerprint.put(info);
+                    }
+                    mFingerprintReady = true;
+                }
+                return mFingerprint.getValue();
+            }
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getPackagesFingerprint", null);
+        }
+    }
+
+    /**
+     * Must be called when an application is installed, updated or removed (e.g. from a
+     * {@code BroadcastReceiver} of the {@code ACTION_PACKAGE_*} broadcasts) to keep the
+     * {@code PackageUtils} data up to date.
+     *
+     * @param packageName package of the changed application.
+     */
+    public void onPackageChanged(String packageName) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "onPackageChanged", packageName);
+        try {
+            PackageSnapshot snapshot = mSnapshot;
+            if (null != snapshot) snapshot.remove(packageName);
+            MetaDataStore store = mMetaData;
+            if (null != store) store.remove(packageName);
+            mResolver.invalidate(packageName);
+            mComponents.invalidate(packageName);
+            synchronized (this) {
+                if (null != mDeadlineLoader) mDeadlineLoader.invalidate(packageName);
+            }
+            synchronized (mFingerprint) {
+                if (mFingerprintReady) {
+                    try {
+                        mFingerprint.put(queryPackageInfo(packageName, 0));
+                    } catch (NameNotFoundException e) {
+                        mFingerprint.remove(packageName);
+                    }
+                }
+            }
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "onPackageChanged", packageName);
         }
-        return resultHashes;
     }
 
     /**
@@ -393,20 +1104,37 @@ public class PackageUtils {
      * @return an {@code Intent} to open the application.
      */
     public Intent getExternalIntent(String packageName) {
-        return mPackageManager.getLaunchIntentForPackage(packageName);
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getExternalIntent", packageName);
+        try {
+            return queryLaunchIntent(packageName);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getExternalIntent", packageName);
+        }
     }
 
     /**
      * Returns an intent to open the external application.
      *
      * @param packageName package of the application to open.
-     * @param activity    an activity in the package to launch.
-     * @return an {@code Intent} to open an application in an exact activity. If null is given as
-     * an activity, returns result of the {@link #getExternalIntent(String)}.
+     * @param activity    an activity in the package to launch, may be relative to the package
+     *                    like {@code .MainActivity}.
+     * @return an {@code Intent} to open an application in an exact activity, or null if there is
+     * no such exported activity. If null or an empty string is given as an activity, returns
+     * result of the {@link #getExternalIntent(String)}.
+     * @see ComponentResolver
      */
     public Intent getExternalIntent(String packageName, String activity) {
-        if (null != activity && activity.length() > 0) return getExternalIntent(packageName);
-        return new Intent().setClassName(packageName, activity);
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "getExternalIntent", packageName);
+        try {
+            if (null == activity || activity.isEmpty()) return getExternalIntent(packageName);
+            ComponentName component = mComponents.resolve(packageName, activity);
+            if (null == component) return null;
+            Intent intent = new Intent();
+            intent.setComponent(component);
+            return intent;
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "getExternalIntent", packageName);
+        }
     }
 
     /**
@@ -416,11 +1144,16 @@ public class PackageUtils {
      * @return true if an application can be deleted, false otherwise.
      */
     public boolean isDeletable(String packageName) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "isDeletable", packageName);
         try {
-            return !isSystemApp(mPackageManager.getApplicationInfo(packageName,
+            PackageSnapshot.Record record = getSnapshotRecord(packageName);
+            if (null != record) return (record.getFlags() & ApplicationInfo.FLAG_SYSTEM) == 0;
+            return !isSystemApp(queryApplicationInfo(packageName,
                     PackageManager.GET_META_DATA));
         } catch (NameNotFoundException e) {
             return false;
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "isDeletable", packageName);
         }
     }
 
@@ -431,17 +1164,311 @@ public class PackageUtils {
      * @return true if updates of the application can be removed, false otherwise.
      */
     public boolean isUpdatedSystemApp(String packageName) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_UTILS, "isUpdatedSystemApp", packageName);
         try {
-            ApplicationInfo applicationInfo =
-                    mPackageManager.getApplicationInfo(packageName, PackageManager.GET_META_DATA);
-            return (applicationInfo.flags & ApplicationInfo.FLAG_UPDATED_SYSTEM_APP) != 0;
+            PackageSnapshot.Record record = getSnapshotRecord(packageName);
+            int flags = null != record ? record.getFlags() : queryApplicationInfo(packageName,
+                    PackageManager.GET_META_DATA).flags;
+            return (flags & ApplicationInfo.FLAG_UPDATED_SYSTEM_APP) != 0;
         } catch (NameNotFoundException e) {
             return false;
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_UTILS, "isUpdatedSystemApp", packageName);
+        }
+    }
+
+    /**
+     * Creates the manager of the caches, see {@link PackageCacheManager} for the tiers.
+     */
+    private PackageCacheManager createCacheManager() {
+        return new PackageCacheManager(new PackageCacheManager.Tier() {
+            @Override
+            public long getSize() {
+                DeadlineLoader loader = peekDeadlineLoader();
+                return null == loader ? 0L : loader.getSize(LOAD_ICON);
+            }
+
+            @Override
+            public long trim() {
+                DeadlineLoader loader = peekDeadlineLoader();
+                return null == loader ? 0L : loader.trim(LOAD_ICON);
+            }
+        }, new PackageCacheManager.Tier() {
+            @Override
+            public long getSize() {
+                return mResolver.getResourcesSize();
+            }
+
+            @Override
+            public long trim() {
+                return mResolver.trimResources();
+            }
+        }, new PackageCacheManager.Tier() {
+            @Override
+            public long getSize() {
+                DeadlineLoader loader = peekDeadlineLoader();
+                return null == loader ? 0L
+                        : loader.getSize(LOAD_META_STRING, LOAD_RESOURCE_STRING);
+            }
+
+            @Override
+            public long trim() {
+                DeadlineLoader loader = peekDeadlineLoader();
+                return null == loader ? 0L : loader.trim(LOAD_META_STRING, LOAD_RESOURCE_STRING);
+            }
+        }, new PackageCacheManager.Tier() {
+            @Override
+            public long getSize() {
+                MetaDataStore store = mMetaData;
+                PackageSnapshot snapshot = mSnapshot;
+                return (null == store ? 0L : store.getSize())
+                        + (null == snapshot ? 0L : snapshot.getSize());
+            }
+
+            @Override
+            public long trim() {
+                MetaDataStore store = mMetaData;
+                PackageSnapshot snapshot = mSnapshot;
+                return (null == store ? 0L : store.trim())
+                        + (null == snapshot ? 0L : snapshot.trim());
+            }
+        }, new PackageCacheManager.Tier() {
+            @Override
+            public long getSize() {
+                return mResolver.getIdsSize() + mComponents.getSize();
+            }
+
+            @Override
+            public long trim() {
+                return mResolver.trimIds() + mComponents.trim();
+            }
+        });
+    }
+
+    /**
+     * Returns the package of a handle, or null for the {@link PackageRegistry#NO_HANDLE} to
+     * treat it as a package, which is not installed.
+     */
+    private String getPackageName(int handle) {
+        return PackageRegistry.NO_HANDLE == handle ? null : mRegistry.getPackageName(handle);
+    }
+
+    /**
+     * Returns projected {@code meta-data} of an application, loading it on the first request.
+     * A package without a handle is registered only if it is installed, so names of unknown
+     * packages are not kept. The entry is not kept if a package was changed during the load.
+     */
+    private MetaDataStore.Entry getMetaDataEntry(MetaDataStore store, int handle,
+                                                 String packageName) {
+        if (PackageRegistry.NO_HANDLE == handle) handle = mRegistry.getHandle(packageName);
+        MetaDataStore.Entry entry = PackageRegistry.NO_HANDLE == handle ? null : store.get(handle);
+        if (null != entry) return entry;
+        int generation = store.getGeneration();
+        PackageSnapshot snapshot = mSnapshot;
+        PackageSnapshot.Record record = getSnapshotRecord(packageName);
+        if (null != snapshot && null != record) entry = snapshot.getMetaData(record, store);
+        if (null == entry) {
+            try {
+                entry = store.project(queryApplicationInfo(packageName,
+                        PackageManager.GET_META_DATA).metaData);
+            } catch (NameNotFoundException e) {
+                if (PackageRegistry.NO_HANDLE == handle) return MetaDataStore.Entry.NOT_INSTALLED;
+                entry = MetaDataStore.Entry.NOT_INSTALLED;
+            }
+        }
+        if (PackageRegistry.NO_HANDLE == handle) handle = mRegistry.register(packageName);
+        store.put(handle, entry, generation);
+        return entry;
+    }
+
+    /**
+     * Returns the snapshot record of a package. On the first request the package is validated
+     * in the background and dropped with all its cached data if it was changed.
+     */
+    private PackageSnapshot.Record getSnapshotRecord(String packageName) {
+        PackageSnapshot snapshot = mSnapshot;
+        if (null == snapshot || null == packageName) return null;
+        final PackageSnapshot.Record record = snapshot.get(packageName);
+        if (null != record && record.startValidation()) {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    validateSnapshotRecord(record);
+                }
+            });
+        }
+        return record;
+    }
+
+    private void validateSnapshotRecord(PackageSnapshot.Record record) {
+        String packageName = record.getPackageName();
+        try {
+            PackageInfo info = queryPackageInfo(packageName, 0);
+            if (info.lastUpdateTime == record.getLastUpdateTime()
+                    && info.versionCode == record.getVersionCode()) {
+                return;
+            }
+        } catch (NameNotFoundException e) {
+            // removed since the snapshot was saved
+        }
+        onPackageChanged(packageName);
+    }
+
+    private synchronized DeadlineLoader getDeadlineLoader() {
+        if (null == mDeadlineLoader) {
+            mDeadlineLoader = new DeadlineLoader(getExecutor());
+        }
+        return mDeadlineLoader;
+    }
+
+    /**
+     * Returns the {@link #mDeadlineLoader} without creating it.
+     */
+    private synchronized DeadlineLoader peekDeadlineLoader() {
+        return mDeadlineLoader;
+    }
+
+    void traceBegin(String category, String name, String packageName) {
+        PackageTracer tracer = mTracer;
+        if (null != tracer) tracer.begin(category, name, packageName);
+    }
+
+    void traceEnd(String category, String name, String packageName) {
+        PackageTracer tracer = mTracer;
+        if (null != tracer) tracer.end(category, name, packageName);
+    }
+
+    private ApplicationInfo queryApplicationInfo(String packageName, int flags)
+            throws NameNotFoundException {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getApplicationInfo", packageName);
+        try {
+            return mPackageManager.getApplicationInfo(packageName, flags);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getApplicationInfo", packageName);
+        }
+    }
+
+    PackageInfo queryPackageInfo(String packageName, int flags)
+            throws NameNotFoundException {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getPackageInfo", packageName);
+        try {
+            return mPackageManager.getPackageInfo(packageName, flags);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getPackageInfo", packageName);
+        }
+    }
+
+    Resources queryResources(String packageName) throws NameNotFoundException {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getResourcesForApplication",
+                packageName);
+        try {
+            return mPackageManager.getResourcesForApplication(packageName);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getResourcesForApplication",
+                    packageName);
+        }
+    }
+
+    private Drawable queryApplicationIcon(String packageName) throws NameNotFoundException {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getApplicationIcon", packageName);
+        try {
+            return mPackageManager.getApplicationIcon(packageName);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getApplicationIcon", packageName);
+        }
+    }
+
+    private CharSequence queryApplicationLabel(ApplicationInfo info) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getApplicationLabel",
+                info.packageName);
+        try {
+            return mPackageManager.getApplicationLabel(info);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getApplicationLabel",
+                    info.packageName);
+        }
+    }
+
+    private List<ApplicationInfo> queryInstalledApplications(int flags) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getInstalledApplications", null);
+        try {
+            return mPackageManager.getInstalledApplications(flags);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getInstalledApplications", null);
+        }
+    }
+
+    private List<PackageInfo> queryInstalledPackages(int flags) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getInstalledPackages", null);
+        try {
+            return mPackageManager.getInstalledPackages(flags);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getInstalledPackages", null);
+        }
+    }
+
+    private Intent queryLaunchIntent(String packageName) {
+        traceBegin(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getLaunchIntentForPackage",
+                packageName);
+        try {
+            return mPackageManager.getLaunchIntentForPackage(packageName);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_PACKAGE_MANAGER, "getLaunchIntentForPackage",
+                    packageName);
+        }
+    }
+
+    int queryIdentifier(Resources resources, String name, String type, String packageName) {
+        traceBegin(PackageTracer.CATEGORY_RESOURCES, "getIdentifier", packageName);
+        try {
+            return resources.getIdentifier(name, type, packageName);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_RESOURCES, "getIdentifier", packageName);
+        }
+    }
+
+    private String queryString(Resources resources, int id, String packageName) {
+        traceBegin(PackageTracer.CATEGORY_RESOURCES, "getString", packageName);
+        try {
+            return resources.getString(id);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_RESOURCES, "getString", packageName);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private Drawable queryDrawable(Resources resources, int id, String packageName) {
+        traceBegin(PackageTracer.CATEGORY_RESOURCES, "getDrawable", packageName);
+        try {
+            return resources.getDrawable(id);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_RESOURCES, "getDrawable", packageName);
+        }
+    }
+
+    private String[] queryStringArray(Resources resources, int id, String packageName) {
+        traceBegin(PackageTracer.CATEGORY_RESOURCES, "getStringArray", packageName);
+        try {
+            return resources.getStringArray(id);
+        } finally {
+            traceEnd(PackageTracer.CATEGORY_RESOURCES, "getStringArray", packageName);
         }
     }
 
     private void setPackageManager(PackageManager packageManager) {
         mPackageManager = packageManager;
+        mSnapshot = null;
+        synchronized (mFingerprint) {
+            mFingerprint.clear();
+            mFingerprintReady = false;
+        }
+        MetaDataStore store = mMetaData;
+        if (null != store) store.clear();
+        mResolver.clear();
+        mComponents.clear();
+        synchronized (this) {
+            if (null != mDeadlineLoader) mDeadlineLoader.clear();
+        }
     }
 
     /**
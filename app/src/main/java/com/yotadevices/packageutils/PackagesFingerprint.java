@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import android.content.pm.PackageInfo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@code PackagesFingerprint} is an order-independent 64-bit fingerprint of a set of
+ * installed packages. Every package contributes a hash of its name, version code and
+ * {@code lastUpdateTime}, and the fingerprint is the sum of those hashes, so it is updated in
+ * O(1) when a single package is installed, updated or removed.
+ * <br>
+ * The value does not depend on the process, so it can be persisted (e.g. as a {@code long} in
+ * {@code SharedPreferences}) and compared with the current value after a restart.
+ */
+public class PackagesFingerprint {
+    /**
+     * The fingerprint of an empty set of packages.
+     */
+    public static final long EMPTY          = 0L;
+    /**
+     * Offset basis of the 64-bit FNV-1a hash.
+     */
+    private static final long FNV_OFFSET    = 0xcbf29ce484222325L;
+    /**
+     * Prime of the 64-bit FNV-1a hash.
+     */
+    private static final long FNV_PRIME     = 0x100000001b3L;
+    /**
+     * Hashes of the packages, which are included into the fingerprint, by package name.
+     */
+    private final Map<String, Long> mHashes = new HashMap<>();
+    /**
+     * Current value of the fingerprint.
+     */
+    private long mValue = EMPTY;
+
+    /**
+     * Returns a hash of a single package, which is stable across processes and devices.
+     *
+     * @param packageName    package of the application.
+     * @param versionCode    version code of the application.
+     * @param lastUpdateTime time the application was last updated at.
+     * @return 64-bit hash of the package.
+     */
+    public static long hash(String packageName, int versionCode, long lastUpdateTime) {
+        long hash = FNV_OFFSET;
+        for (int i = 0, length = packageName.length(); i < length; i++) {
+            hash = (hash ^ packageName.charAt(i)) * FNV_PRIME;
+        }
+        hash = mix(hash ^ versionCode);
+        return mix(hash ^ lastUpdateTime);
+    }
+
+    /**
+     * Finalizer of the SplitMix64 generator, spreads every bit of the input over the result.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * Returns the current value of the fingerprint.
+     *
+     * @return 64-bit fingerprint of all the packages put into it,
+     * or {@link #EMPTY} if there are no packages.
+     */
+    public synchronized long getValue() {
+        return mValue;
+    }
+
+    /**
+     * Returns the number of packages included into the fingerprint.
+     *
+     * @return number of packages.
+     */
+    public synchronized int size() {
+        return mHashes.size();
+    }
+
+    /**
+     * Includes an installed or updated package into the fingerprint, replacing its previous
+     * version if there was one.
+     *
+     * @param info {@code PackageInfo} of the package.
+     */
+    public synchronized void put(PackageInfo info) {
+        long hash = hash(info.packageName, info.versionCode, info.lastUpdateTime);
+        Long previous = mHashes.put(info.packageName, hash);
+        if (null != previous) mValue -= previous;
+        mValue += hash;
+    }
+
+    /**
+     * Excludes a removed package from the fingerprint.
+     *
+     * @param packageName package of the removed application.
+     */
+    public synchronized void remove(String packageName) {
+        Long previous = mHashes.remove(packageName);
+        if (null != previous) mValue -= previous;
+    }
+
+    /**
+     * Excludes all the packages from the fingerprint.
+     */
+    public synchronized void clear() {
+        mHashes.clear();
+        mValue = EMPTY;
+    }
+}
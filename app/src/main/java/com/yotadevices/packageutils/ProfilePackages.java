@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import android.content.Context;
+import android.content.pm.LauncherActivityInfo;
+import android.content.pm.LauncherApps;
+import android.os.UserHandle;
+import android.os.UserManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The {@code ProfilePackages} enumerates packages of all the user profiles of the calling user,
+ * e.g. of the personal and the work profiles. Profiles are scanned in parallel, and the packages
+ * of every profile are cached separately, so a change in one profile doesn't cause a rescan of
+ * the others.
+ * <br>
+ * Packages of other profiles are visible through the {@code LauncherApps} service only, so only
+ * the packages, which have launcher activities, are enumerated.
+ */
+public class ProfilePackages {
+    @SuppressWarnings("unused")
+    private static final String TAG = ProfilePackages.class.getSimpleName();
+
+    /**
+     * A package installed in one or more profiles.
+     */
+    public static final class Entry {
+        private final String mPackageName;
+        private final List<UserHandle> mProfiles;
+
+        Entry(String packageName, List<UserHandle> profiles) {
+            mPackageName = packageName;
+            mProfiles = Collections.unmodifiableList(profiles);
+        }
+
+        /**
+         * Returns the package of the application.
+         *
+         * @return the package name.
+         */
+        public String getPackageName() {
+            return mPackageName;
+        }
+
+        /**
+         * Returns the profiles the application is installed in.
+         *
+         * @return unmodifiable list of the profiles in the order of
+         * {@code UserManager#getUserProfiles()}.
+         */
+        public List<UserHandle> getProfiles() {
+            return mProfiles;
+        }
+    }
+
+    /**
+     * Thrown when some of the profiles cannot be scanned. It carries the packages of the
+     * profiles, which were scanned.
+     */
+    public static final class ScanException extends RuntimeException {
+        private final List<Entry> mPackages;
+        private final List<UserHandle> mFailedProfiles;
+
+        ScanException(List<Entry> packages, List<UserHandle> failedProfiles, Throwable cause) {
+            super("Cannot scan packages of " + failedProfiles, cause);
+            mPackages = Collections.unmodifiableList(packages);
+            mFailedProfiles = Collections.unmodifiableList(failedProfiles);
+        }
+
+        /**
+         * Returns packages of the profiles, which were scanned.
+         *
+         * @return unmodifiable partial list of the packages.
+         */
+        public List<Entry> getPackages() {
+            return mPackages;
+        }
+
+        /**
+         * Returns the profiles, which cannot be scanned.
+         *
+         * @return unmodifiable list of the profiles.
+         */
+        public List<UserHandle> getFailedProfiles() {
+            return mFailedProfiles;
+        }
+    }
+
+    /**
+     * Access to the profiles and their packages, replaced in tests.
+     */
+    interface Source {
+        List<UserHandle> getUserProfiles();
+
+        /**
+         * Returns packages of the launcher activities of the profile, a package is listed once
+         * for every its activity.
+         */
+        List<String> scan(UserHandle profile);
+
+        boolean isPackageEnabled(String packageName, UserHandle profile);
+
+        void registerCallback(LauncherApps.Callback callback);
+
+        void unregisterCallback(LauncherApps.Callback callback);
+    }
+
+    private final Source mSource;
+    /**
+     * Executor to scan profiles on.
+     */
+    private final ExecutorService mExecutor;
+    /**
+     * Packages by profile, guarded by {@code this}.
+     */
+    private final Map<UserHandle, List<String>> mSnapshots = new HashMap<>();
+    /**
+     * Number of invalidations of every profile, used to drop scans, which became stale while
+     * running. Guarded by {@code this}.
+     */
+    private final Map<UserHandle, Integer> mVersions = new HashMap<>();
+    /**
+     * Invalidates snapshots when packages are changed, see {@link #startWatching()}.
+     */
+    private final LauncherApps.Callback mCallback = new LauncherApps.Callback() {
+        @Override
+        public void onPackageRemoved(String packageName, UserHandle user) {
+            onPackageChanged(packageName, user);
+        }
+
+        @Override
+        public void onPackageAdded(String packageName, UserHandle user) {
+            onPackageChanged(packageName, user);
+        }
+
+        @Override
+        public void onPackageChanged(String packageName, UserHandle user) {
+            ProfilePackages.this.onPackageChanged(packageName, user);
+        }
+
+        @Override
+        public void onPackagesAvailable(String[] packageNames, UserHandle user,
+                                        boolean replacing) {
+            invalidate(user);
+        }
+
+        @Override
+        public void onPackagesUnavailable(String[] packageNames, UserHandle user,
+                                          boolean replacing) {
+            invalidate(user);
+        }
+    };
+
+    /**
+     * Constructs the {@code ProfilePackages}, which scans profiles on the
+     * {@link PackageUtils#getExecutor()}.
+     *
+     * @param context a {@code Context} to get system services from.
+     */
+    public ProfilePackages(Context context) {
+        this(context, PackageUtils.getInstance().getExecutor());
+    }
+
+    /**
+     * Constructs the {@code ProfilePackages}.
+     *
+     * @param context  a {@code Context} to get system services from.
+     * @param executor executor to scan profiles on.
+     */
+    public ProfilePackages(Context context, ExecutorService executor) {
+        this(new SystemSource(context), executor);
+    }
+
+    ProfilePackages(Source source, ExecutorService executor) {
+        mSource = source;
+        mExecutor = executor;
+    }
+
+    /**
+     * Returns packages of all the profiles. Profiles, which were not scanned yet or were changed
+     * since the last scan, are scanned in parallel. The calling thread takes part in scanning
+     * and never waits for a scan, which was not started, so it's safe to call this method on
+     * the executor of the scans.
+     *
+     * @return list of the packages, each package is listed once with all its profiles.
+     * @throws ScanException if some of the profiles cannot be scanned.
+     */
+    public List<Entry> getPackages() {
+        List<UserHandle> profiles = mSource.getUserProfiles();
+        Map<UserHandle, Throwable> failures = new LinkedHashMap<>();
+        Map<UserHandle, List<String>> snapshots = getSnapshots(profiles, failures);
+        Map<String, List<UserHandle>> merged = new LinkedHashMap<>();
+        for (UserHandle profile : profiles) {
+            List<String> packageNames = snapshots.get(profile);
+            if (null == packageNames) continue;
+            for (String packageName : packageNames) {
+                List<UserHandle> packageProfiles = merged.get(packageName);
+                if (null == packageProfiles) {
+                    packageProfiles = new ArrayList<>(profiles.size());
+                    merged.put(packageName, packageProfiles);
+                }
+                packageProfiles.add(profile);
+            }
+        }
+        List<Entry> entries = new ArrayList<>(merged.size());
+        for (Map.Entry<String, List<UserHandle>> entry : merged.entrySet()) {
+            entries.add(new Entry(entry.getKey(), entry.getValue()));
+        }
+        if (!failures.isEmpty()) {
+            throw new ScanException(entries, new ArrayList<>(failures.keySet()),
+                    failures.values().iterator().next());
+        }
+        return entries;
+    }
+
+    /**
+     * Returns packages of a single profile.
+     *
+     * @param profile the profile to get packages of.
+     * @return unmodifiable list of the packages.
+     * @throws ScanException if the profile cannot be scanned.
+     */
+    public List<String> getPackages(UserHandle profile) {
+        Map<UserHandle, Throwable> failures = new LinkedHashMap<>();
+        List<String> packageNames =
+                getSnapshots(Collections.singletonList(profile), failures).get(profile);
+        if (!failures.isEmpty()) {
+            throw new ScanException(Collections.<Entry>emptyList(),
+                    Collections.singletonList(profile), failures.get(profile));
+        }
+        return packageNames;
+    }
+
+    /**
+     * Returns whether an application is installed and enabled in a profile or not.
+     *
+     * @param packageName package of the application.
+     * @param profile     the profile to check.
+     * @return true if the application is installed and enabled in the profile, false otherwise.
+     */
+    public boolean isPackageEnabled(String packageName, UserHandle profile) {
+        return mSource.isPackageEnabled(packageName, profile);
+    }
+
+    /**
+     * Must be called when an application is installed, updated or removed in a profile, unless
+     * {@link #startWatching()} was called. Only the snapshot of that profile is invalidated.
+     *
+     * @param packageName package of the changed application.
+     * @param profile     the profile the application was changed in.
+     */
+    public void onPackageChanged(String packageName, UserHandle profile) {
+        invalidate(profile);
+    }
+
+    /**
+     * Starts watching for changes of packages in all the profiles. Must be called on a thread
+     * with a {@code Looper}, changes are delivered to it.
+     */
+    public void startWatching() {
+        mSource.registerCallback(mCallback);
+    }
+
+    /**
+     * Stops watching for changes of packages, see {@link #startWatching()}.
+     */
+    public void stopWatching() {
+        mSource.unregisterCallback(mCallback);
+    }
+
+    private synchronized void invalidate(UserHandle profile) {
+        mSnapshots.remove(profile);
+        Integer version = mVersions.get(profile);
+        mVersions.put(profile, null == version ? 1 : version + 1);
+    }
+
+    /**
+     * Returns snapshots of the profiles, scanning the missing ones in parallel. Profiles, which
+     * cannot be scanned, are put to the failures.
+     */
+    private Map<UserHandle, List<String>> getSnapshots(List<UserHandle> profiles,
+                                                       Map<UserHandle, Throwable> failures) {
+        Map<UserHandle, List<String>> snapshots = new HashMap<>(profiles.size());
+        Map<UserHandle, FutureTask<List<String>>> scans = new LinkedHashMap<>();
+        Map<UserHandle, Integer> versions = new HashMap<>();
+        synchronized (this) {
+            for (final UserHandle profile : profiles) {
+                List<String> snapshot = mSnapshots.get(profile);
+                if (null != snapshot) {
+                    snapshots.put(profile, snapshot);
+                    continue;
+                }
+                versions.put(profile, mVersions.get(profile));
+                scans.put(profile, new FutureTask<>(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() {
+                        Set<String> packageNames = new LinkedHashSet<>(mSource.scan(profile));
+                        return Collections.unmodifiableList(new ArrayList<>(packageNames));
+                    }
+                }));
+            }
+        }
+        // the last scan runs on the calling thread, the others are offered to the executor
+        int count = 0;
+        for (FutureTask<List<String>> scan : scans.values()) {
+            if (++count < scans.size()) mExecutor.execute(scan);
+        }
+        boolean interrupted = false;
+        for (Map.Entry<UserHandle, FutureTask<List<String>>> scan : scans.entrySet()) {
+            UserHandle profile = scan.getKey();
+            FutureTask<List<String>> task = scan.getValue();
+            task.run(); // NOP if the scan was started by the executor
+            try {
+                List<String> snapshot = task.get();
+                snapshots.put(profile, snapshot);
+                synchronized (this) {
+                    Integer version = mVersions.get(profile);
+                    Integer scanned = versions.get(profile);
+                    if (null == version ? null == scanned : version.equals(scanned)) {
+                        mSnapshots.put(profile, snapshot);
+                    }
+                }
+            } catch (ExecutionException e) {
+                failures.put(profile, e.getCause());
+            } catch (InterruptedException e) {
+                interrupted = true;
+                failures.put(profile, e);
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        return snapshots;
+    }
+
+    /**
+     * Reads profiles from the {@code UserManager} and their packages from the
+     * {@code LauncherApps}.
+     */
+    private static final class SystemSource implements Source {
+        private final UserManager mUserManager;
+        private final LauncherApps mLauncherApps;
+
+        SystemSource(Context context) {
+            mUserManager = (UserManager) context.getSystemService(Context.USER_SERVICE);
+            mLauncherApps =
+                    (LauncherApps) context.getSystemService(Context.LAUNCHER_APPS_SERVICE);
+        }
+
+        @Override
+        public List<UserHandle> getUserProfiles() {
+            return mUserManager.getUserProfiles();
+        }
+
+        @Override
+        public List<String> scan(UserHandle profile) {
+            List<LauncherActivityInfo> activities = mLauncherApps.getActivityList(null, profile);
+            List<String> packageNames = new ArrayList<>(activities.size());
+            for (LauncherActivityInfo activity : activities) {
+                packageNames.add(activity.getComponentName().getPackageName());
+            }
+            return packageNames;
+        }
+
+        @Override
+        public boolean isPackageEnabled(String packageName, UserHandle profile) {
+            return mLauncherApps.isPackageEnabled(packageName, profile);
+        }
+
+        @Override
+        public void registerCallback(LauncherApps.Callback callback) {
+            mLauncherApps.registerCallback(callback);
+        }
+
+        @Override
+        public void unregisterCallback(LauncherApps.Callback callback) {
+            mLauncherApps.unregisterCallback(callback);
+        }
+    }
+}
@@ -0,0 +1,547 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.yotadevices.packageutils.PackageTracer.CATEGORY_PACKAGE_UTILS;
+import static com.yotadevices.packageutils.PackageTracer.CATEGORY_RESOURCES;
+
+/**
+ * The {@code ResourceResolver} resolves typed values of applications' resources by references
+ * like {@code @color/accent} or {@code @android:dimen/app_icon_size}. The {@code Resources} of
+ * every application and the resolved ids are cached, so repeated lookups don't load the
+ * application's assets and don't search for ids again. The cache of a package is dropped by
+ * {@link PackageUtils#onPackageChanged(String)} only, so it must be called when the package
+ * is updated or removed.
+ * <br>
+ * Access the resolver through the {@link PackageUtils#getResolver()} method.
+ */
+public class ResourceResolver {
+    /**
+     * Package of the system resources, referenced like {@code @android:type/name}.
+     */
+    private static final String SYSTEM_PACKAGE = "android";
+    /**
+     * Prefix of references to the system resources.
+     */
+    private static final String SYSTEM_PREFIX  = PackageUtils.AT + PackageUtils.ANDROID_URI;
+    private static final Accessor<String> STRING = new Accessor<String>() {
+        @Override
+        public String get(Resources resources, int id) {
+            return resources.getString(id);
+        }
+    };
+    private static final Accessor<String[]> STRING_ARRAY = new Accessor<String[]>() {
+        @Override
+        public String[] get(Resources resources, int id) {
+            return resources.getStringArray(id);
+        }
+    };
+    private static final Accessor<int[]> INT_ARRAY = new Accessor<int[]>() {
+        @Override
+        public int[] get(Resources resources, int id) {
+            return resources.getIntArray(id);
+        }
+    };
+    private static final Accessor<Drawable> DRAWABLE = new Accessor<Drawable>() {
+        @Override
+        @SuppressWarnings("deprecation")
+        public Drawable get(Resources resources, int id) {
+            return resources.getDrawable(id);
+        }
+    };
+    private static final IntAccessor COLOR = new IntAccessor() {
+        @Override
+        @SuppressWarnings("deprecation")
+        public int get(Resources resources, int id) {
+            return resources.getColor(id);
+        }
+    };
+    private static final IntAccessor DIMENSION = new IntAccessor() {
+        @Override
+        public int get(Resources resources, int id) {
+            return Float.floatToRawIntBits(resources.getDimension(id));
+        }
+    };
+    private static final IntAccessor DIMENSION_PIXEL_SIZE = new IntAccessor() {
+        @Override
+        public int get(Resources resources, int id) {
+            return resources.getDimensionPixelSize(id);
+        }
+    };
+    private static final IntAccessor INTEGER = new IntAccessor() {
+        @Override
+        public int get(Resources resources, int id) {
+            return resources.getInteger(id);
+        }
+    };
+    private static final IntAccessor BOOLEAN = new IntAccessor() {
+        @Override
+        public int get(Resources resources, int id) {
+            return resources.getBoolean(id) ? 1 : 0;
+        }
+    };
+    /**
+     * {@code PackageUtils} used to load resources and to trace calls.
+     */
+    private final PackageUtils mUtils;
+    /**
+     * Cached resources by package name.
+     */
+    private final Map<String, PackageResources> mPackages = new ConcurrentHashMap<>();
+    /**
+     * Cached system resources, loaded on the first request.
+     */
+    private volatile PackageResources mSystem;
+    /**
+     * Incremented on every invalidation, so resources loaded before it are not cached, guarded
+     * by {@code this}.
+     */
+    private int mGeneration;
+
+    /**
+     * Constructs the {@code ResourceResolver}.
+     *
+     * @param utils {@code PackageUtils} to load resources with.
+     */
+    ResourceResolver(PackageUtils utils) {
+        mUtils = utils;
+    }
+
+    /**
+     * Returns the cached {@code Resources} of the application.
+     *
+     * @param packageName package of the application.
+     * @return {@code Resources} of the application.
+     * @throws NameNotFoundException if there is no such application.
+     */
+    public Resources getResources(String packageName) throws NameNotFoundException {
+        return getPackageResources(packageName).getResources();
+    }
+
+    /**
+     * Returns the cached id of the application's resource.
+     *
+     * @param packageName package of the application.
+     * @param type        type of the resource, e.g. {@link PackageUtils#TYPE_STRING}.
+     * @param name        name of the resource.
+     * @return id of the resource, or 0 if there is no such resource.
+     * @throws NameNotFoundException if there is no such application.
+     */
+    public int getIdentifier(String packageName, String type, String name)
+            throws NameNotFoundException {
+        return getPackageResources(packageName).getIdentifier(type, name);
+    }
+
+    /**
+     * Returns the cached id of a resource by its reference.
+     *
+     * @param packageName package of the application, ignored for {@code @android:} references.
+     * @param reference   reference to the resource, e.g. {@code @integer/columns}.
+     * @return id of the resource, or 0 if there is no such resource or the reference is invalid.
+     * @throws NameNotFoundException if there is no such application.
+     */
+    public int getIdentifier(String packageName, String reference) throws NameNotFoundException {
+        return resolve(packageName, reference).getIdentifier(reference);
+    }
+
+    /**
+     * Returns a string by its reference, e.g. {@code @string/app_name}.
+     *
+     * @param packageName package of the application, ignored for {@code @android:} references.
+     * @param reference   reference to the resource.
+     * @param defValue    value to return if there is no such application or resource.
+     * @return the string or the default value.
+     */
+    public String getString(String packageName, String reference, String defValue) {
+        return query("getString", packageName, reference, defValue, STRING);
+    }
+
+    /**
+     * Returns a color by its reference, e.g. {@code @color/accent}.
+     *
+     * @param packageName package of the application, ignored for {@code @android:} references.
+     * @param reference   reference to the resource.
+     * @param defValue    value to return if there is no such application or resource.
+     * @return the color or the default value.
+     */
+    public int getColor(String packageName, String reference, int defValue) {
+        return queryInt("getColor", packageName, reference, defValue, COLOR);
+    }
+
+    /**
+     * Returns a dimension by its reference, e.g. {@code @dimen/padding}.
+     *
+     * @param packageName package of the application, ignored for {@code @android:} references.
+     * @param reference   reference to the resource.
+     * @param defValue    value to return if there is no such application or resource.
+     * @return the dimension in pixels or the default value.
+     */
+    public float getDimension(String packageName, String reference, float defValue) {
+        return Float.intBitsToFloat(queryInt("getDimension", packageName, reference,
+                Float.floatToRawIntBits(defValue), DIMENSION));
+    }
+
+    /**
+     * Returns a dimension by its reference, rounded to an integer pixel size.
+     *
+     * @param packageName package of the application, ignored for {@code @android:} references.
+     * @param reference   reference to the resource, e.g. {@code @dimen/icon_size}.
+     * @param defValue    value to return if there is no such application or resource.
+     * @return the dimension in pixels or the default value.
+     */
+    public int getDimensionPixelSize(String packageName, String reference, int defValue) {
+        return queryInt("getDimensionPixelSize", packageName, reference, defValue,
+                DIMENSION_PIXEL_SIZE);
+    }
+
+    /**
+     * Returns an integer by its reference, e.g. {@code @integer/columns}.
+     *
+     * @param packageName package of the application, ignored for {@code @android:} references.
+     * @param reference   reference to the resource.
+     * @param defValue    value to return if there is no such application or resource.
+     * @return the integer or the default value.
+     */
+    public int getInteger(String packageName, String reference, int defValue) {
+        return queryInt("getInteger", packageName, reference, defValue, INTEGER);
+    }
+
+    /**
+     * Returns a boolean by its reference, e.g. {@code @bool/is_tablet}.
+     *
+     * @param packageName package of the application, ignored for {@code @android:} references.
+     * @param reference   reference to the resource.
+     * @param defValue    value to return if there is no such application or resource.
+     * @return the boolean or the default value.
+     */
+    public boolean getBoolean(String packageName, String reference, boolean defValue) {
+        return 0 != queryInt("getBoolean", packageName, reference, defValue ? 1 : 0, BOOLEAN);
+    }
+
+    /**
+     * Returns a string array by its reference, e.g. {@code @array/entries}.
+     *
+     * @param packageName package of the application, ignored for {@code @android:} references.
+     * @param reference   reference to the resource.
+     * @return the string array, or null if there is no such application or resource.
+     */
+    public String[] getStringArray(String packageName, String reference) {
+        return query("getStringArray", packageName, reference, null, STRING_ARRAY);
+    }
+
+    /**
+     * Returns an integer array by its reference, e.g. {@code @array/sizes}.
+     *
+     * @param packageName package of the application, ignored for {@code @android:} references.
+     * @param reference   reference to the resource.
+     * @return the integer array, or null if there is no such application or resource.
+     */
+    public int[] getIntArray(String packageName, String reference) {
+        return query("getIntArray", packageName, reference, null, INT_ARRAY);
+    }
+
+    /**
+     * Returns a drawable by its reference, e.g. {@code @drawable/background}.
+     *
+     * @param packageName package of the application, ignored for {@code @android:} references.
+     * @param reference   reference to the resource.
+     * @return the drawable, or null if there is no such application or resource.
+     */
+    public Drawable getDrawable(String packageName, String reference) {
+        return query("getDrawable", packageName, reference, null, DRAWABLE);
+    }
+
+    /**
+     * Forgets the cached resources of a package, e.g. when the package was updated.
+     *
+     * @param packageName package of the application.
+     */
+    public synchronized void invalidate(String packageName) {
+        mGeneration++;
+        mPackages.remove(packageName);
+    }
+
+    /**
+     * Forgets all the cached resources.
+     */
+    public synchronized void clear() {
+        mGeneration++;
+        mPackages.clear();
+        mSystem = null;
+    }
+
+    /**
+     * Returns the estimated size of the cached {@code Resources} of applications.
+     *
+     * @return size in bytes, see {@link PackageCacheManager#RESOURCES_SIZE}.
+     */
+    long getResourcesSize() {
+        long size = 0;
+        for (PackageResources resources : mPackages.values()) {
+            if (resources.isLoaded()) size += PackageCacheManager.RESOURCES_SIZE;
+        }
+        return size;
+    }
+
+    /**
+     * Releases the cached {@code Resources} of applications, resolved ids are kept. Released
+     * {@code Resources} are loaded again on the next request.
+     *
+     * @return estimated size of the released {@code Resources} in bytes.
+     */
+    long trimResources() {
+        long size = 0;
+        for (PackageResources resources : mPackages.values()) {
+            if (resources.release()) size += PackageCacheManager.RESOURCES_SIZE;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the estimated size of the resolved ids.
+     *
+     * @return size in bytes.
+     */
+    long getIdsSize() {
+        PackageResources system = mSystem;
+        long size = null == system ? 0 : system.getIdsSize();
+        for (PackageResources resources : mPackages.values()) {
+            size += resources.getIdsSize();
+        }
+        return size;
+    }
+
+    /**
+     * Forgets all the cached resources and resolved ids.
+     *
+     * @return estimated size of the forgotten data in bytes.
+     */
+    long trimIds() {
+        long size = getIdsSize() + getResourcesSize();
+        clear();
+        return size;
+    }
+
+    /**
+     * Gets a value of a resource by its reference with the accessor, tracing the lookup.
+     */
+    private <T> T query(String method, String packageName, String reference, T defValue,
+                        Accessor<T> accessor) {
+        mUtils.traceBegin(CATEGORY_PACKAGE_UTILS, method, packageName);
+        try {
+            PackageResources resources = resolve(packageName, reference);
+            int id = resources.getIdentifier(reference);
+            if (0 == id) return defValue;
+            Resources packageResources = resources.getResources();
+            mUtils.traceBegin(CATEGORY_RESOURCES, method, packageName);
+            try {
+                return accessor.get(packageResources, id);
+            } finally {
+                mUtils.traceEnd(CATEGORY_RESOURCES, method, packageName);
+            }
+        } catch (NameNotFoundException | Resources.NotFoundException e) {
+            return defValue;
+        } finally {
+            mUtils.traceEnd(CATEGORY_PACKAGE_UTILS, method, packageName);
+        }
+    }
+
+    /**
+     * Same as {@link #query(String, String, String, Object, Accessor)} for values kept in an
+     * {@code int}, which are not boxed, so cached lookups don't allocate.
+     */
+    private int queryInt(String method, String packageName, String reference, int defValue,
+                         IntAccessor accessor) {
+        mUtils.traceBegin(CATEGORY_PACKAGE_UTILS, method, packageName);
+        try {
+            PackageResources resources = resolve(packageName, reference);
+            int id = resources.getIdentifier(reference);
+            if (0 == id) return defValue;
+            Resources packageResources = resources.getResources();
+            mUtils.traceBegin(CATEGORY_RESOURCES, method, packageName);
+            try {
+                return accessor.get(packageResources, id);
+            } finally {
+                mUtils.traceEnd(CATEGORY_RESOURCES, method, packageName);
+            }
+        } catch (NameNotFoundException | Resources.NotFoundException e) {
+            return defValue;
+        } finally {
+            mUtils.traceEnd(CATEGORY_PACKAGE_UTILS, method, packageName);
+        }
+    }
+
+    private PackageResources resolve(String packageName, String reference)
+            throws NameNotFoundException {
+        if (null != reference && reference.startsWith(SYSTEM_PREFIX)) {
+            PackageResources system = mSystem;
+            if (null == system) {
+                Resources resources = Resources.getSystem();
+                if (null == resources) throw new NameNotFoundException(SYSTEM_PACKAGE);
+                system = new PackageResources(resources, SYSTEM_PACKAGE);
+                mSystem = system;
+            }
+            return system;
+        }
+        return getPackageResources(packageName);
+    }
+
+    private PackageResources getPackageResources(String packageName)
+            throws NameNotFoundException {
+        // a null name is not a valid key of the map, and no application has it
+        if (null == packageName) throw new NameNotFoundException();
+        PackageResources resources = mPackages.get(packageName);
+        if (null != resources) return resources;
+        int generation = getGeneration();
+        resources = new PackageResources(mUtils.queryResources(packageName), packageName);
+        return cache(packageName, resources, generation);
+    }
+
+    private synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Caches loaded resources unless a package was invalidated during the load, returns the
+     * resources cached for the package.
+     */
+    private synchronized PackageResources cache(String packageName, PackageResources resources,
+                                                int generation) {
+        if (generation != mGeneration) return resources;
+        PackageResources cached = mPackages.get(packageName);
+        if (null != cached) return cached;
+        mPackages.put(packageName, resources);
+        return resources;
+    }
+
+    /**
+     * Gets a value of a resource.
+     *
+     * @param <T> type of the value.
+     */
+    private interface Accessor<T> {
+        T get(Resources resources, int id);
+    }
+
+    /**
+     * Gets a value of a resource, which is kept in an {@code int}.
+     */
+    private interface IntAccessor {
+        int get(Resources resources, int id);
+    }
+
+    /**
+     * {@code Resources} of a single package with the ids resolved in them.
+     */
+    private final class PackageResources {
+        private final String mPackageName;
+        /**
+         * Whether the {@link #mResources} can be released, false for the system resources.
+         */
+        private final boolean mReleasable;
+        /**
+         * The resources, or null if they were released under memory pressure.
+         */
+        private volatile Resources mResources;
+        /**
+         * Resolved ids by reference, guarded by {@code this}.
+         */
+        private final Map<String, Integer> mReferences = new HashMap<>();
+        /**
+         * Resolved ids by type and name, guarded by {@code this}.
+         */
+        private final Map<String, Map<String, Integer>> mIds = new HashMap<>();
+
+        PackageResources(Resources resources, String packageName) {
+            mResources = resources;
+            mPackageName = packageName;
+            mReleasable = !SYSTEM_PACKAGE.equals(packageName);
+        }
+
+        Resources getResources() throws NameNotFoundException {
+            Resources resources = mResources;
+            if (null == resources) {
+                resources = mUtils.queryResources(mPackageName);
+                mResources = resources;
+            }
+            return resources;
+        }
+
+        boolean isLoaded() {
+            return mReleasable && null != mResources;
+        }
+
+        boolean release() {
+            if (!isLoaded()) return false;
+            mResources = null;
+            return true;
+        }
+
+        synchronized long getIdsSize() {
+            long size = 0;
+            for (String reference : mReferences.keySet()) {
+                size += PackageCacheManager.ENTRY_SIZE + PackageCacheManager.sizeOf(reference);
+            }
+            for (Map<String, Integer> ids : mIds.values()) {
+                for (String name : ids.keySet()) {
+                    size += PackageCacheManager.ENTRY_SIZE + PackageCacheManager.sizeOf(name);
+                }
+            }
+            return size;
+        }
+
+        int getIdentifier(String reference) throws NameNotFoundException {
+            synchronized (this) {
+                Integer id = mReferences.get(reference);
+                if (null != id) return id;
+            }
+            // invalid references are not cached, so arbitrary strings don't grow the cache
+            if (!PackageUtils.isValidResourceName(reference)) return 0;
+            int id = getIdentifier(PackageUtils.parseResourceType(reference),
+                    PackageUtils.parseResourceName(reference));
+            synchronized (this) {
+                mReferences.put(reference, id);
+            }
+            return id;
+        }
+
+        int getIdentifier(String type, String name) throws NameNotFoundException {
+            synchronized (this) {
+                Map<String, Integer> ids = mIds.get(type);
+                Integer id = null == ids ? null : ids.get(name);
+                if (null != id) return id;
+            }
+            int id = mUtils.queryIdentifier(getResources(), name, type, mPackageName);
+            synchronized (this) {
+                Map<String, Integer> ids = mIds.get(type);
+                if (null == ids) {
+                    ids = new HashMap<>();
+                    mIds.put(type, ids);
+                }
+                ids.put(name, id);
+            }
+            return id;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.test.mock.MockPackageManager;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.yotadevices.packageutils.Utilities.EXISTING_COLOR_RESOURCE_FULL_NAME;
+import static com.yotadevices.packageutils.Utilities.EXISTING_LAUNCHABLE_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.EXISTING_META_TAG;
+import static com.yotadevices.packageutils.Utilities.EXISTING_STRING_RESOURCE_FULL_NAME;
+import static com.yotadevices.packageutils.Utilities.EXISTING_STRING_RESOURCE_NAME;
+import static com.yotadevices.packageutils.Utilities.EXPORTED_ACTIVITY;
+import static com.yotadevices.packageutils.Utilities.INVALID_RES_NAME_WHITESPACE;
+import static com.yotadevices.packageutils.Utilities.VALID_ANDROID_RES_NAME;
+import static com.yotadevices.packageutils.Utilities.VALID_RES_NAME_UNDERSCORE;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Guards hot paths of the {@code PackageUtils} against regressions like per-call regex
+ * compilation or materialized lists. Every path is run against a fake {@code PackageManager},
+ * which allocates nothing itself, and must fit into its budget of bytes allocated per call,
+ * measured with the thread allocation counter of the JVM.
+ * <br>
+ * Average time per call depends on the machine, so its budgets are checked only if the
+ * {@code packageutils.timeBudgets} system property is true.
+ */
+public class AllocationBudgetTest {
+    private static final int PACKAGE_COUNT = 10000;
+    private static final int WARM_UP_CALLS = 20000;
+    private static final int MEASURED_CALLS = 20000;
+    private static final int WARM_UP_BULK_CALLS = 200;
+    private static final int MEASURED_BULK_CALLS = 200;
+    /**
+     * Budget of a call, which must not allocate, allowing for a stray allocation of the JVM.
+     */
+    private static final long NO_ALLOCATION = 1L;
+    /**
+     * Budget of a call, which returns a short new string.
+     */
+    private static final long SUBSTRING_ALLOCATION = 64L;
+    /**
+     * Budget of a call of a cached lookup, in nanoseconds.
+     */
+    private static final long CACHED_CALL_NANOS = 20000L;
+    /**
+     * Budget of a call, which enumerates {@link #PACKAGE_COUNT} packages, in nanoseconds.
+     */
+    private static final long BULK_CALL_NANOS = 20000000L;
+    /**
+     * Whether the time budgets are checked.
+     */
+    private static final boolean TIME_BUDGETS = Boolean.getBoolean("packageutils.timeBudgets");
+
+    private static Method sGetThreadAllocatedBytes;
+    private static Object sThreadBean;
+    /**
+     * Consumes results, so calls are not eliminated as dead code.
+     */
+    private static volatile int sSink;
+
+    @BeforeClass
+    public static void setUpClass() {
+        try {
+            Object bean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+            if (type.isInstance(bean)
+                    && (Boolean) type.getMethod("isThreadAllocatedMemorySupported").invoke(bean)) {
+                type.getMethod("setThreadAllocatedMemoryEnabled", boolean.class)
+                        .invoke(bean, true);
+                sThreadBean = bean;
+                sGetThreadAllocatedBytes = type.getMethod("getThreadAllocatedBytes", long.class);
+            }
+        } catch (ReflectiveOperationException e) {
+            sThreadBean = null;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        PackageUtils.getInstance().setMetaDataProjection();
+    }
+
+    @Test
+    public void isValidResourceName_noAllocation() {
+        assertBudget("isValidResourceName", new Call() {
+            @Override
+            public int call() {
+                return (PackageUtils.isValidResourceName(VALID_RES_NAME_UNDERSCORE) ? 1 : 0)
+                        + (PackageUtils.isValidResourceName(VALID_ANDROID_RES_NAME) ? 1 : 0)
+                        + (PackageUtils.isValidResourceName(INVALID_RES_NAME_WHITESPACE) ? 1 : 0);
+            }
+        }, NO_ALLOCATION, CACHED_CALL_NANOS);
+    }
+
+    @Test
+    public void parseResourceName_singleString() {
+        assertBudget("parseResourceName", new Call() {
+            @Override
+            public int call() {
+                return PackageUtils.parseResourceName(VALID_RES_NAME_UNDERSCORE).length();
+            }
+        }, SUBSTRING_ALLOCATION, CACHED_CALL_NANOS);
+        assertBudget("parseResourceType", new Call() {
+            @Override
+            public int call() {
+                return PackageUtils.parseResourceType(VALID_ANDROID_RES_NAME).length();
+            }
+        }, SUBSTRING_ALLOCATION, CACHED_CALL_NANOS);
+    }
+
+    @Test
+    public void getPackagesHashes_onlyResultAllocated() {
+        final PackageUtils utils = PackageUtils.instantiate(new ScaledPackageManager());
+        assertBudget("getPackagesHashes", new Call() {
+            @Override
+            public int call() {
+                return utils.getPackagesHashes().length;
+            }
+        }, 4L * PACKAGE_COUNT + SUBSTRING_ALLOCATION, BULK_CALL_NANOS,
+                WARM_UP_BULK_CALLS, MEASURED_BULK_CALLS);
+    }
+
+    @Test
+    public void getPackagesFingerprint_cached_noAllocation() {
+        final PackageUtils utils = PackageUtils.instantiate(new ScaledPackageManager());
+        assertBudget("getPackagesFingerprint", new Call() {
+            @Override
+            public int call() {
+                return (int) utils.getPackagesFingerprint();
+            }
+        }, NO_ALLOCATION, CACHED_CALL_NANOS);
+    }
+
+    @Test
+    public void getMetaString_projected_noAllocation() {
+        final PackageUtils utils = PackageUtils.instantiate(new ScaledPackageManager());
+        utils.setMetaDataProjection(EXISTING_META_TAG);
+        final String[] packageNames = ScaledPackageManager.getPackageNames();
+        assertBudget("getMetaString", new Call() {
+            private int mIndex;
+
+            @Override
+            public int call() {
+                mIndex = (mIndex + 1) % packageNames.length;
+                return utils.getMetaString(packageNames[mIndex], EXISTING_META_TAG).length();
+            }
+        }, NO_ALLOCATION, CACHED_CALL_NANOS);
+    }
+
+    @Test
+    public void resourceLookups_cached_noAllocation() {
+        final PackageUtils utils = PackageUtils.instantiate(new DummyPackageManager());
+        final ResourceResolver resolver = utils.getResolver();
+        assertBudget("getResourceString", new Call() {
+            @Override
+            public int call() {
+                return utils.getResourceString(EXISTING_LAUNCHABLE_PACKAGE,
+                        EXISTING_STRING_RESOURCE_NAME).length();
+            }
+        }, NO_ALLOCATION, CACHED_CALL_NANOS);
+        assertBudget("ResourceResolver.getColor", new Call() {
+            @Override
+            public int call() {
+                return resolver.getColor(EXISTING_LAUNCHABLE_PACKAGE,
+                        EXISTING_COLOR_RESOURCE_FULL_NAME, 0);
+            }
+        }, NO_ALLOCATION, CACHED_CALL_NANOS);
+        assertBudget("getStringByName", new Call() {
+            @Override
+            public int call() {
+                return utils.getStringByName(EXISTING_LAUNCHABLE_PACKAGE,
+                        EXISTING_STRING_RESOURCE_FULL_NAME).length();
+            }
+        }, SUBSTRING_ALLOCATION, CACHED_CALL_NANOS);
+    }
+
+    @Test
+    public void resolveComponent_cached_noAllocation() {
+        final ComponentResolver resolver =
+                PackageUtils.instantiate(new DummyPackageManager()).getComponentResolver();
+        assertBudget("ComponentResolver.resolve", new Call() {
+            @Override
+            public int call() {
+                return null == resolver.resolve(EXISTING_LAUNCHABLE_PACKAGE, EXPORTED_ACTIVITY)
+                        ? 0 : 1;
+            }
+        }, NO_ALLOCATION, CACHED_CALL_NANOS);
+    }
+
+    private static void assertBudget(String name, Call call, long maxBytes, long maxNanos) {
+        assertBudget(name, call, maxBytes, maxNanos, WARM_UP_CALLS, MEASURED_CALLS);
+    }
+
+    /**
+     * Runs the call until it's compiled and asserts average allocation and time of a call.
+     */
+    private static void assertBudget(String name, Call call, long maxBytes, long maxNanos,
+                                     int warmUpCalls, int measuredCalls) {
+        Assume.assumeTrue("Thread allocation counter is not supported", null != sThreadBean);
+        int sink = 0;
+        for (int i = 0; i < warmUpCalls; i++) {
+            sink += call.call();
+        }
+        long bytes = getAllocatedBytes();
+        long nanos = System.nanoTime();
+        for (int i = 0; i < measuredCalls; i++) {
+            sink += call.call();
+        }
+        nanos = (System.nanoTime() - nanos) / measuredCalls;
+        bytes = (getAllocatedBytes() - bytes) / measuredCalls;
+        sSink = sink;
+        assertTrue(name + " allocates " + bytes + " bytes per call, budget is " + maxBytes,
+                bytes <= maxBytes);
+        if (TIME_BUDGETS) {
+            assertTrue(name + " takes " + nanos + " ns per call, budget is " + maxNanos,
+                    nanos <= maxNanos);
+        }
+    }
+
+    private static long getAllocatedBytes() {
+        try {
+            return (Long) sGetThreadAllocatedBytes.invoke(sThreadBean,
+                    Thread.currentThread().getId());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A measured call.
+     */
+    private interface Call {
+        /**
+         * Calls a hot path.
+         *
+         * @return any value depending on the result of the path.
+         */
+        int call();
+    }
+
+    /**
+     * The {@code ScaledPackageManager} has {@link #PACKAGE_COUNT} packages without
+     * {@code meta-data}. Its data is created once, so it doesn't allocate when called.
+     */
+    private static final class ScaledPackageManager extends MockPackageManager {
+        private static final List<ApplicationInfo> APPLICATIONS = createApplications();
+        private static final Map<String, ApplicationInfo> BY_NAME = new HashMap<>();
+
+        static {
+            for (ApplicationInfo info : APPLICATIONS) {
+                BY_NAME.put(info.packageName, info);
+            }
+        }
+
+        static String[] getPackageNames() {
+            String[] names = new String[APPLICATIONS.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = APPLICATIONS.get(i).packageName;
+            }
+            return names;
+        }
+
+        private static List<ApplicationInfo> createApplications() {
+            List<ApplicationInfo> applications = new ArrayList<>(PACKAGE_COUNT);
+            for (int i = 0; i < PACKAGE_COUNT; i++) {
+                applications.add(Utilities.createApplicationInfo("com.example.package" + i));
+            }
+            return Collections.unmodifiableList(applications);
+        }
+
+        @Override
+        public List<ApplicationInfo> getInstalledApplications(int flags) {
+            return APPLICATIONS;
+        }
+
+        @Override
+        public List<PackageInfo> getInstalledPackages(int flags) {
+            List<PackageInfo> packages = new ArrayList<>(PACKAGE_COUNT);
+            for (ApplicationInfo info : APPLICATIONS) {
+                packages.add(Utilities.createPackageInfo(info.packageName));
+            }
+            return packages;
+        }
+
+        @Override
+        public ApplicationInfo getApplicationInfo(String packageName, int flags)
+                throws NameNotFoundException {
+            ApplicationInfo info = BY_NAME.get(packageName);
+            if (null == info) throw new NameNotFoundException(packageName);
+            return info;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.yotadevices.packageutils.Utilities.EXISTING_LAUNCHABLE_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.EXISTING_STRING_RESOURCE_FULL_NAME;
+import static com.yotadevices.packageutils.Utilities.EXISTING_STRING_VALUE;
+import static com.yotadevices.packageutils.Utilities.NOT_EXISTING_PACKAGE;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncPackageUtilsTest {
+    private static final long TIMEOUT = 5000L;
+    private static final int RACE_ITERATIONS = 100000;
+
+    private ExecutorService mExecutor;
+    private PackageUtils mUtils;
+    private AsyncPackageUtils mAsync;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newCachedThreadPool();
+        mUtils = PackageUtils.instantiate(new DummyPackageManager());
+        mAsync = new AsyncPackageUtils(mUtils, mExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void getStringByName_returnStringResource() throws Exception {
+        assertThat(mAsync.getStringByName(EXISTING_LAUNCHABLE_PACKAGE,
+                EXISTING_STRING_RESOURCE_FULL_NAME).get(TIMEOUT, TimeUnit.MILLISECONDS),
+                is(EXISTING_STRING_VALUE));
+    }
+
+    @Test
+    public void getStringByName_handle_returnStringResource() throws Exception {
+        int handle = mUtils.getRegistry().register(EXISTING_LAUNCHABLE_PACKAGE);
+        assertThat(mAsync.getStringByName(handle, EXISTING_STRING_RESOURCE_FULL_NAME)
+                .get(TIMEOUT, TimeUnit.MILLISECONDS), is(EXISTING_STRING_VALUE));
+    }
+
+    @Test
+    public void packageInstalled_returnInstalled() throws Exception {
+        assertTrue(mAsync.packageInstalled(EXISTING_LAUNCHABLE_PACKAGE)
+                .get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertFalse(mAsync.packageInstalled(NOT_EXISTING_PACKAGE)
+                .get(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void then_transformResult() throws Exception {
+        PackageFuture<String> result = mAsync.isPackageInstalled(NOT_EXISTING_PACKAGE)
+                .then(new PackageFuture.Function<Boolean, String>() {
+                    @Override
+                    public String apply(Boolean installed) {
+                        return String.valueOf(installed);
+                    }
+                });
+        assertThat(result.get(TIMEOUT, TimeUnit.MILLISECONDS), is("false"));
+    }
+
+    @Test
+    public void thenCompose_chainCalls() throws Exception {
+        PackageFuture<String> result = mAsync.isPackageInstalled(EXISTING_LAUNCHABLE_PACKAGE)
+                .thenCompose(new PackageFuture.AsyncFunction<Boolean, String>() {
+                    @Override
+                    public PackageFuture<String> apply(Boolean installed) {
+                        return mAsync.getStringByName(EXISTING_LAUNCHABLE_PACKAGE,
+                                EXISTING_STRING_RESOURCE_FULL_NAME);
+                    }
+                });
+        assertThat(result.get(TIMEOUT, TimeUnit.MILLISECONDS), is(EXISTING_STRING_VALUE));
+    }
+
+    @Test
+    public void then_error_propagated() throws Exception {
+        final IllegalStateException error = new IllegalStateException();
+        PackageFuture<String> result = mAsync.isPackageInstalled(EXISTING_LAUNCHABLE_PACKAGE)
+                .then(new PackageFuture.Function<Boolean, Boolean>() {
+                    @Override
+                    public Boolean apply(Boolean installed) {
+                        throw error;
+                    }
+                })
+                .then(new PackageFuture.Function<Boolean, String>() {
+                    @Override
+                    public String apply(Boolean installed) {
+                        return String.valueOf(installed);
+                    }
+                });
+        try {
+            result.get(TIMEOUT, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is((Throwable) error));
+        }
+    }
+
+    @Test
+    public void cancel_propagatedToRunningCall() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final PackageFuture<String> blocked = new PackageFuture<>();
+        PackageFuture<String> result = mAsync.isPackageInstalled(EXISTING_LAUNCHABLE_PACKAGE)
+                .thenCompose(new PackageFuture.AsyncFunction<Boolean, String>() {
+                    @Override
+                    public PackageFuture<String> apply(Boolean installed) {
+                        started.countDown();
+                        return blocked;
+                    }
+                });
+        assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        blocked.addCallback(new PackageFuture.Callback<String>() {
+            @Override
+            public void onSuccess(String value) {
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                if (error instanceof CancellationException) cancelled.countDown();
+            }
+        }, new DirectExecutor());
+        assertTrue(result.cancel(true));
+        assertTrue(cancelled.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(blocked.isCancelled());
+        assertFalse(result.cancel(true));
+    }
+
+    @Test
+    public void cancel_racingWithThenCompose_nextCancelled() throws Exception {
+        for (int i = 0; i < RACE_ITERATIONS; i++) {
+            final PackageFuture<Boolean> first = new PackageFuture<>();
+            final PackageFuture<String> next = new PackageFuture<>();
+            final PackageFuture<String> result = first.thenCompose(
+                    new PackageFuture.AsyncFunction<Boolean, String>() {
+                        @Override
+                        public PackageFuture<String> apply(Boolean installed) {
+                            return next;
+                        }
+                    });
+            final CountDownLatch start = new CountDownLatch(1);
+            Future<Boolean> completed = mExecutor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws InterruptedException {
+                    start.await();
+                    return first.complete(true);
+                }
+            });
+            Future<Boolean> cancelled = mExecutor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws InterruptedException {
+                    start.await();
+                    return result.cancel(true);
+                }
+            });
+            start.countDown();
+            assertTrue(cancelled.get(TIMEOUT, TimeUnit.MILLISECONDS));
+            // if the first call was cancelled before its completion, the next one isn't started
+            if (completed.get(TIMEOUT, TimeUnit.MILLISECONDS)) assertTrue(next.isCancelled());
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void completeExceptionally_null_rejected() {
+        new PackageFuture<String>().completeExceptionally(null);
+    }
+
+    @Test
+    public void addCallback_notifiedOnExecutor() throws Exception {
+        final CountDownLatch notified = new CountDownLatch(1);
+        final AtomicReference<Boolean> value = new AtomicReference<>();
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        ExecutorService callbackExecutor = Executors.newSingleThreadExecutor();
+        try {
+            final Thread callbackThread = callbackExecutor.submit(new Callable<Thread>() {
+                @Override
+                public Thread call() {
+                    return Thread.currentThread();
+                }
+            }).get();
+            mAsync.isPackageInstalled(EXISTING_LAUNCHABLE_PACKAGE).addCallback(
+                    new PackageFuture.Callback<Boolean>() {
+                        @Override
+                        public void onSuccess(Boolean installed) {
+                            value.set(installed);
+                            thread.set(Thread.currentThread());
+                            notified.countDown();
+                        }
+
+                        @Override
+                        public void onFailure(Throwable error) {
+                            notified.countDown();
+                        }
+                    }, callbackExecutor);
+            assertTrue(notified.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            assertThat(value.get(), is(true));
+            assertThat(thread.get(), is(callbackThread));
+        } finally {
+            callbackExecutor.shutdownNow();
+        }
+    }
+
+    private static final class DirectExecutor implements Executor {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import android.content.pm.PackageInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.yotadevices.packageutils.Utilities.EXISTING_LAUNCHABLE_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.EXPORTED_ACTIVITY;
+import static com.yotadevices.packageutils.Utilities.NOT_EXISTING_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.PRIVATE_ACTIVITY;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+public class ComponentResolverTest {
+    private DummyPackageManager mPackageManager;
+    private ComponentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mPackageManager = new DummyPackageManager();
+        mResolver = PackageUtils.instantiate(mPackageManager).getComponentResolver();
+    }
+
+    @Test
+    public void resolve_exportedActivity_returnComponent() {
+        assertNotNull(mResolver.resolve(EXISTING_LAUNCHABLE_PACKAGE, EXPORTED_ACTIVITY));
+        assertNotNull(mResolver.resolve(EXISTING_LAUNCHABLE_PACKAGE,
+                EXISTING_LAUNCHABLE_PACKAGE + EXPORTED_ACTIVITY));
+    }
+
+    @Test
+    public void resolve_notExported_returnNull() {
+        assertNull(mResolver.resolve(EXISTING_LAUNCHABLE_PACKAGE, PRIVATE_ACTIVITY));
+        assertNull(mResolver.resolve(EXISTING_LAUNCHABLE_PACKAGE, ".NoSuchActivity"));
+        assertNull(mResolver.resolve(NOT_EXISTING_PACKAGE, EXPORTED_ACTIVITY));
+        assertNull(mResolver.resolve(EXISTING_LAUNCHABLE_PACKAGE, null));
+    }
+
+    @Test
+    public void resolve_packageQueriedOnce() {
+        for (int i = 0; i < 3; i++) {
+            mResolver.resolve(EXISTING_LAUNCHABLE_PACKAGE, EXPORTED_ACTIVITY);
+            mResolver.resolve(EXISTING_LAUNCHABLE_PACKAGE, PRIVATE_ACTIVITY);
+            mResolver.resolve(NOT_EXISTING_PACKAGE, EXPORTED_ACTIVITY);
+        }
+        assertThat(mPackageManager.getPackageInfoRequests(), is(2));
+    }
+
+    @Test
+    public void onPackageChanged_requeriesPackage() {
+        mResolver.resolve(EXISTING_LAUNCHABLE_PACKAGE, EXPORTED_ACTIVITY);
+        mResolver.resolve(NOT_EXISTING_PACKAGE, EXPORTED_ACTIVITY);
+        PackageUtils.getInstance().onPackageChanged(NOT_EXISTING_PACKAGE);
+        int requests = mPackageManager.getPackageInfoRequests();
+        mResolver.resolve(EXISTING_LAUNCHABLE_PACKAGE, EXPORTED_ACTIVITY);
+        mResolver.resolve(NOT_EXISTING_PACKAGE, EXPORTED_ACTIVITY);
+        assertThat(mPackageManager.getPackageInfoRequests(), is(requests + 1));
+    }
+
+    @Test
+    public void changedDuringQuery_notCached() {
+        mPackageManager = new DummyPackageManager() {
+            private boolean mChanged;
+
+            @Override
+            public PackageInfo getPackageInfo(String packageName, int flags)
+                    throws NameNotFoundException {
+                PackageInfo info = super.getPackageInfo(packageName, flags);
+                if (!mChanged) {
+                    mChanged = true;
+                    mResolver.invalidate(packageName);
+                }
+                return info;
+            }
+        };
+        mResolver = PackageUtils.instantiate(mPackageManager).getComponentResolver();
+        mResolver.resolve(EXISTING_LAUNCHABLE_PACKAGE, EXPORTED_ACTIVITY);
+        mResolver.resolve(EXISTING_LAUNCHABLE_PACKAGE, EXPORTED_ACTIVITY);
+        mResolver.resolve(EXISTING_LAUNCHABLE_PACKAGE, EXPORTED_ACTIVITY);
+        assertThat(mPackageManager.getPackageInfoRequests(), is(2));
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.yotadevices.packageutils.Utilities.EXISTING_LAUNCHABLE_PACKAGE;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class DeadlineLoaderTest {
+    private static final String KIND = "kind";
+    private static final String PLACEHOLDER = "placeholder";
+    private static final String VALUE = "value";
+    private static final long TIMEOUT = 5000L;
+
+    private ExecutorService mExecutor;
+    private DeadlineLoader mLoader;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newCachedThreadPool();
+        mLoader = new DeadlineLoader(mExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void load_inTime_returnValue() {
+        assertThat(mLoader.load(KIND, EXISTING_LAUNCHABLE_PACKAGE, null, TIMEOUT, PLACEHOLDER,
+                new Value(VALUE), null), is(VALUE));
+    }
+
+    @Test
+    public void load_late_returnPlaceholderAndNotify() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch notified = new CountDownLatch(1);
+        final AtomicReference<String> loaded = new AtomicReference<>();
+        String value = mLoader.load(KIND, EXISTING_LAUNCHABLE_PACKAGE, null, 1L, PLACEHOLDER,
+                new Callable<String>() {
+                    @Override
+                    public String call() throws InterruptedException {
+                        release.await();
+                        return VALUE;
+                    }
+                }, new DeadlineLoader.Callback<String>() {
+                    @Override
+                    public void onLoaded(String packageName, String value) {
+                        loaded.set(value);
+                        notified.countDown();
+                    }
+                });
+        assertThat(value, is(PLACEHOLDER));
+        release.countDown();
+        assertTrue(notified.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertThat(loaded.get(), is(VALUE));
+    }
+
+    @Test
+    public void load_late_returnLastValue() throws InterruptedException {
+        mLoader.load(KIND, EXISTING_LAUNCHABLE_PACKAGE, null, TIMEOUT, PLACEHOLDER,
+                new Value(VALUE), null);
+        final CountDownLatch release = new CountDownLatch(1);
+        String value = mLoader.load(KIND, EXISTING_LAUNCHABLE_PACKAGE, null, 1L, PLACEHOLDER,
+                new Callable<String>() {
+                    @Override
+                    public String call() throws InterruptedException {
+                        release.await();
+                        return PLACEHOLDER;
+                    }
+                }, null);
+        release.countDown();
+        assertThat(value, is(VALUE));
+    }
+
+    @Test
+    public void load_lateFails_keepLastValueAndDoNotNotify() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DeadlineLoader loader = new DeadlineLoader(executor);
+            loader.load(KIND, EXISTING_LAUNCHABLE_PACKAGE, null, TIMEOUT, PLACEHOLDER,
+                    new Value(VALUE), null);
+            final CountDownLatch release = new CountDownLatch(1);
+            final AtomicInteger notified = new AtomicInteger();
+            Callable<String> failing = new Callable<String>() {
+                @Override
+                public String call() throws InterruptedException {
+                    release.await();
+                    throw new IllegalStateException();
+                }
+            };
+            String value = loader.load(KIND, EXISTING_LAUNCHABLE_PACKAGE, null, 1L, PLACEHOLDER,
+                    failing, new DeadlineLoader.Callback<String>() {
+                        @Override
+                        public void onLoaded(String packageName, String value) {
+                            notified.incrementAndGet();
+                        }
+                    });
+            assertThat(value, is(VALUE));
+            release.countDown();
+            // the single thread runs this after the failed load is finished
+            executor.submit(new Value(VALUE)).get(TIMEOUT, TimeUnit.MILLISECONDS);
+            assertThat(notified.get(), is(0));
+            assertThat(loader.load(KIND, EXISTING_LAUNCHABLE_PACKAGE, null, TIMEOUT, PLACEHOLDER,
+                    failing, null), is(VALUE));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void load_concurrent_loadedOnce() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        Callable<String> loader = new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+                loads.incrementAndGet();
+                release.await();
+                return VALUE;
+            }
+        };
+        mLoader.load(KIND, EXISTING_LAUNCHABLE_PACKAGE, null, 1L, PLACEHOLDER, loader, null);
+        mLoader.load(KIND, EXISTING_LAUNCHABLE_PACKAGE, null, 1L, PLACEHOLDER, loader, null);
+        release.countDown();
+        assertThat(loads.get(), is(1));
+    }
+
+    @Test
+    public void invalidate_forgetsLastValue() {
+        mLoader.load(KIND, EXISTING_LAUNCHABLE_PACKAGE, null, TIMEOUT, PLACEHOLDER,
+                new Value(VALUE), null);
+        mLoader.invalidate(EXISTING_LAUNCHABLE_PACKAGE);
+        final CountDownLatch release = new CountDownLatch(1);
+        String value = mLoader.load(KIND, EXISTING_LAUNCHABLE_PACKAGE, null, 1L, PLACEHOLDER,
+                new Callable<String>() {
+                    @Override
+                    public String call() throws InterruptedException {
+                        release.await();
+                        return VALUE;
+                    }
+                }, null);
+        release.countDown();
+        assertThat(value, is(PLACEHOLDER));
+    }
+
+    @Test
+    public void load_drawable_callersGetDistinctInstances() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Drawable loaded = new TestDrawable();
+        final Callable<Drawable> loader = new Callable<Drawable>() {
+            @Override
+            public Drawable call() throws InterruptedException {
+                release.await();
+                return loaded;
+            }
+        };
+        Future<Drawable> first = mExecutor.submit(new Callable<Drawable>() {
+            @Override
+            public Drawable call() {
+                return mLoader.load(KIND, EXISTING_LAUNCHABLE_PACKAGE, null, TIMEOUT, null,
+                        loader, null);
+            }
+        });
+        Drawable late = mLoader.load(KIND, EXISTING_LAUNCHABLE_PACKAGE, null, 1L, null,
+                loader, null);
+        assertThat(late, is((Drawable) null));
+        release.countDown();
+        Drawable second = mLoader.load(KIND, EXISTING_LAUNCHABLE_PACKAGE, null, TIMEOUT, null,
+                loader, null);
+        Drawable coalesced = first.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        Drawable last = mLoader.load(KIND, EXISTING_LAUNCHABLE_PACKAGE, null, 1L, null,
+                new Callable<Drawable>() {
+                    @Override
+                    public Drawable call() throws InterruptedException {
+                        blocked.await();
+                        return loaded;
+                    }
+                }, null);
+        blocked.countDown();
+        assertNotSame(loaded, coalesced);
+        assertNotSame(loaded, second);
+        assertNotSame(loaded, last);
+        assertNotSame(coalesced, second);
+        assertNotSame(second, last);
+        assertThat(last, is(instanceOf(TestDrawable.class)));
+    }
+
+    private static class TestDrawable extends Drawable {
+        private final ConstantState mState = new ConstantState() {
+            @Override
+            public Drawable newDrawable() {
+                return new TestDrawable();
+            }
+
+            @Override
+            public int getChangingConfigurations() {
+                return 0;
+            }
+        };
+
+        @Override
+        public ConstantState getConstantState() {
+            return mState;
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+        }
+
+        @Override
+        public void setColorFilter(ColorFilter colorFilter) {
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.OPAQUE;
+        }
+    }
+
+    private static class Value implements Callable<String> {
+        private final String mValue;
+
+        Value(String value) {
+            mValue = value;
+        }
+
+        @Override
+        public String call() {
+            return mValue;
+        }
+    }
+}
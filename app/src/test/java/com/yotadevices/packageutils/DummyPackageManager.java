@@ -16,6 +16,7 @@
 package com.yotadevices.packageutils;
 
 import android.content.Intent;
+import android.content.pm.ActivityInfo;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
@@ -27,17 +28,26 @@ import android.test.mock.MockResources;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import static com.yotadevices.packageutils.Utilities.EXISTING_COLOR_RESOURCE_NAME;
+import static com.yotadevices.packageutils.Utilities.EXISTING_COLOR_RES_ID;
+import static com.yotadevices.packageutils.Utilities.EXISTING_COLOR_VALUE;
 import static com.yotadevices.packageutils.Utilities.EXISTING_META_TAG;
 import static com.yotadevices.packageutils.Utilities.EXISTING_NOT_LAUNCHABLE_PACKAGE;
 import static com.yotadevices.packageutils.Utilities.EXISTING_PACKAGES;
 import static com.yotadevices.packageutils.Utilities.EXISTING_RES_ID;
 import static com.yotadevices.packageutils.Utilities.EXISTING_STRING_RESOURCE_NAME;
 import static com.yotadevices.packageutils.Utilities.EXISTING_STRING_VALUE;
+import static com.yotadevices.packageutils.Utilities.EXPORTED_ACTIVITY;
+import static com.yotadevices.packageutils.Utilities.PRIVATE_ACTIVITY;
 import static com.yotadevices.packageutils.Utilities.STUB_LIST;
+import static com.yotadevices.packageutils.Utilities.TYPE_COLOR;
 import static com.yotadevices.packageutils.Utilities.TYPE_STRING;
 import static com.yotadevices.packageutils.Utilities.USELESS_DRAWABLE;
+import static com.yotadevices.packageutils.Utilities.createActivityInfo;
 import static com.yotadevices.packageutils.Utilities.createApplicationInfo;
+import static com.yotadevices.packageutils.Utilities.createPackageInfo;
 
 /**
  * The {@code DummyPackageManager} class is a stub version of the {@code PackageManager}.
@@ -46,16 +56,41 @@ import static com.yotadevices.packageutils.Utilities.createApplicationInfo;
  * @author Vitalii Dmitriev
  */
 public class DummyPackageManager extends MockPackageManager {
+    private int mApplicationInfoRequests;
+    private int mPackageInfoRequests;
+    private int mResourcesRequests;
+    private int mIdentifierRequests;
     /**
-     * Constructs the {@code DummyPackageManager} with no packages as installed.
+     * Installed packages, initially the {@code EXISTING_PACKAGES}.
+     */
+    private final List<String> mPackages = new CopyOnWriteArrayList<>(EXISTING_PACKAGES);
+
+    /**
+     * Constructs the {@code DummyPackageManager} with the {@code EXISTING_PACKAGES} installed.
      */
     public DummyPackageManager() { /* NOP */ }
 
+    /**
+     * Removes a package from the installed ones.
+     *
+     * @param packageName package of the application to remove.
+     */
+    public void removePackage(String packageName) {
+        mPackages.remove(packageName);
+    }
+
     @Override
     public PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException {
-        if (EXISTING_PACKAGES.contains(packageName) && PackageManager.GET_ACTIVITIES == flags) {
-            PackageInfo info = new PackageInfo();
-            info.packageName = packageName;
+        mPackageInfoRequests++;
+        if (mPackages.contains(packageName)
+                && (0 == flags || PackageManager.GET_ACTIVITIES == flags)) {
+            PackageInfo info = createPackageInfo(packageName);
+            if (PackageManager.GET_ACTIVITIES == flags) {
+                info.activities = new ActivityInfo[]{
+                        createActivityInfo(packageName, EXPORTED_ACTIVITY, true),
+                        createActivityInfo(packageName, PRIVATE_ACTIVITY, false)
+                };
+            }
             return info;
         }
         throw new NameNotFoundException("No such package!");
@@ -63,12 +98,10 @@ public class DummyPackageManager extends MockPackageManager {
 
     @Override
     public ApplicationInfo getApplicationInfo(String packageName, int flags) throws NameNotFoundException {
-        if (EXISTING_PACKAGES.contains(packageName)) {
+        mApplicationInfoRequests++;
+        if (mPackages.contains(packageName)) {
             ApplicationInfo info = createApplicationInfo(packageName);
-            if ((flags & PackageManager.GET_META_DATA) != 0) {
-                info.metaData = new Bundle();
-                info.metaData.putString(EXISTING_META_TAG, EXISTING_STRING_VALUE);
-            }
+            if ((flags & PackageManager.GET_META_DATA) != 0) info.metaData = createMetaData();
             return info;
         }
         throw new NameNotFoundException();
@@ -76,17 +109,30 @@ public class DummyPackageManager extends MockPackageManager {
 
     @Override
     public Resources getResourcesForApplication(String appPackageName) throws NameNotFoundException {
+        mResourcesRequests++;
         return new MockResources() {
             @Override
             public int getIdentifier(String name, String defType, String defPackage) {
+                mIdentifierRequests++;
                 if (EXISTING_STRING_RESOURCE_NAME.equals(name)
                         && TYPE_STRING.equals(defType)
-                        && EXISTING_PACKAGES.contains(defPackage)) {
+                        && mPackages.contains(defPackage)) {
                     return EXISTING_RES_ID;
                 }
+                if (EXISTING_COLOR_RESOURCE_NAME.equals(name)
+                        && TYPE_COLOR.equals(defType)
+                        && mPackages.contains(defPackage)) {
+                    return EXISTING_COLOR_RES_ID;
+                }
                 return 0;
             }
 
+            @Override
+            public int getColor(int id) throws NotFoundException {
+                if (EXISTING_COLOR_RES_ID == id) return EXISTING_COLOR_VALUE;
+                throw new NotFoundException();
+            }
+
             @Override
             public String getString(int id) throws NotFoundException {
                 if (EXISTING_RES_ID == id) return EXISTING_STRING_VALUE;
@@ -95,10 +141,15 @@ public class DummyPackageManager extends MockPackageManager {
         };
     }
 
+    @Override
+    public CharSequence getApplicationLabel(ApplicationInfo info) {
+        return info.packageName;
+    }
+
     @Override
     public Drawable getApplicationIcon(String packageName) throws NameNotFoundException {
         boolean notLaunchablePackage = EXISTING_NOT_LAUNCHABLE_PACKAGE.equals(packageName);
-        if (EXISTING_PACKAGES.contains(packageName) && !notLaunchablePackage) {
+        if (mPackages.contains(packageName) && !notLaunchablePackage) {
             return USELESS_DRAWABLE;
         } else if (notLaunchablePackage) {
             throw new Resources.NotFoundException();
@@ -110,8 +161,8 @@ public class DummyPackageManager extends MockPackageManager {
     @Override
     public List<ApplicationInfo> getInstalledApplications(int flags) {
         if (PackageManager.GET_META_DATA == flags) {
-            List<ApplicationInfo> applicationInfoList = new ArrayList<>(EXISTING_PACKAGES.size());
-            for (String packageName : EXISTING_PACKAGES) {
+            List<ApplicationInfo> applicationInfoList = new ArrayList<>(mPackages.size());
+            for (String packageName : mPackages) {
                 ApplicationInfo applicationInfo = new ApplicationInfo();
                 applicationInfo.packageName = packageName;
                 applicationInfoList.add(applicationInfo);
@@ -123,12 +174,14 @@ public class DummyPackageManager extends MockPackageManager {
 
     @Override
     public List<PackageInfo> getInstalledPackages(int flags) {
-        if (PackageManager.GET_META_DATA == flags) {
-            List<PackageInfo> applicationInfoList = new ArrayList<>(EXISTING_PACKAGES.size());
-            for (String packageName : EXISTING_PACKAGES) {
-                PackageInfo packageInfo = new PackageInfo();
-                packageInfo.packageName = packageName;
-                applicationInfoList.add(packageInfo);
+        if (0 == flags || PackageManager.GET_META_DATA == flags) {
+            List<PackageInfo> applicationInfoList = new ArrayList<>(mPackages.size());
+            for (String packageName : mPackages) {
+                PackageInfo info = createPackageInfo(packageName);
+                if (PackageManager.GET_META_DATA == flags) {
+                    info.applicationInfo.metaData = createMetaData();
+                }
+                applicationInfoList.add(info);
             }
             return applicationInfoList;
         }
@@ -138,7 +191,7 @@ public class DummyPackageManager extends MockPackageManager {
     @Override
     public Intent getLaunchIntentForPackage(String packageName) {
         boolean bad = EXISTING_NOT_LAUNCHABLE_PACKAGE.equals(packageName);
-        if (EXISTING_PACKAGES.contains(packageName) && !bad) {
+        if (mPackages.contains(packageName) && !bad) {
             Intent intent = new Intent();
             intent.setAction(Intent.ACTION_MAIN);
             intent.setPackage(packageName);
@@ -147,4 +200,38 @@ public class DummyPackageManager extends MockPackageManager {
         }
         return null;
     }
+
+    /**
+     * Returns how many times {@link #getApplicationInfo(String, int)} was called.
+     */
+    public int getApplicationInfoRequests() {
+        return mApplicationInfoRequests;
+    }
+
+    /**
+     * Returns how many times {@link #getPackageInfo(String, int)} was called.
+     */
+    public int getPackageInfoRequests() {
+        return mPackageInfoRequests;
+    }
+
+    /**
+     * Returns how many times {@link #getResourcesForApplication(String)} was called.
+     */
+    public int getResourcesRequests() {
+        return mResourcesRequests;
+    }
+
+    /**
+     * Returns how many times {@code Resources#getIdentifier} was called.
+     */
+    public int getIdentifierRequests() {
+        return mIdentifierRequests;
+    }
+
+    private static Bundle createMetaData() {
+        Bundle metaData = new Bundle();
+        metaData.putString(EXISTING_META_TAG, EXISTING_STRING_VALUE);
+        return metaData;
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.yotadevices.packageutils.Utilities.EXISTING_COLOR_RESOURCE_FULL_NAME;
+import static com.yotadevices.packageutils.Utilities.EXISTING_LAUNCHABLE_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.EXISTING_META_TAG;
+import static com.yotadevices.packageutils.Utilities.EXISTING_STRING_RESOURCE_FULL_NAME;
+import static com.yotadevices.packageutils.Utilities.EXISTING_STRING_VALUE;
+import static com.yotadevices.packageutils.Utilities.USELESS_DRAWABLE;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class PackageCacheManagerTest {
+    private static final int DEFAULT_COLOR = 0xffffffff;
+    private static final long TIMEOUT = 5000L;
+
+    private DummyPackageManager mPackageManager;
+    private PackageUtils mUtils;
+    private PackageCacheManager mManager;
+
+    @Before
+    public void setUp() {
+        mPackageManager = new DummyPackageManager();
+        mUtils = PackageUtils.instantiate(mPackageManager);
+        mUtils.setMetaDataProjection(EXISTING_META_TAG);
+        mManager = mUtils.getCacheManager();
+    }
+
+    @Test
+    public void getTierCount_higherLevelShedsMore() {
+        int[] levels = {
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE,
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW,
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL,
+                ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN,
+                ComponentCallbacks2.TRIM_MEMORY_BACKGROUND,
+                ComponentCallbacks2.TRIM_MEMORY_MODERATE,
+                ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+        };
+        int[] counts = {1, 2, 3, 3, 4, 4, 5};
+        for (int i = 0; i < levels.length; i++) {
+            assertThat(PackageCacheManager.getTierCount(levels[i]), is(counts[i]));
+            if (i > 0) {
+                assertTrue(PackageCacheManager.getTierCount(levels[i])
+                        >= PackageCacheManager.getTierCount(levels[i - 1]));
+            }
+        }
+        assertThat(PackageCacheManager.getTierCount(0), is(0));
+    }
+
+    @Test
+    public void onTrimMemory_drawablesShed() throws InterruptedException {
+        assertThat(mUtils.getIcon(EXISTING_LAUNCHABLE_PACKAGE, TIMEOUT, null, null),
+                is(USELESS_DRAWABLE));
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (0 == mManager.getSize(PackageCacheManager.TIER_DRAWABLES)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertTrue(mManager.getSize(PackageCacheManager.TIER_DRAWABLES) > 0);
+        mManager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertThat(mManager.getSize(PackageCacheManager.TIER_DRAWABLES), is(0L));
+        assertTrue(mManager.getReclaimedBytes() > 0);
+    }
+
+    @Test
+    public void trim_resourcesReloadedIdsKept() {
+        ResourceResolver resolver = mUtils.getResolver();
+        resolver.getColor(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_COLOR_RESOURCE_FULL_NAME,
+                DEFAULT_COLOR);
+        assertThat(mManager.getSize(PackageCacheManager.TIER_RESOURCES),
+                is(PackageCacheManager.RESOURCES_SIZE));
+        // sheds drawables and resources
+        assertTrue(mManager.trim(2) >= PackageCacheManager.RESOURCES_SIZE);
+        assertThat(mManager.getSize(PackageCacheManager.TIER_RESOURCES), is(0L));
+        assertTrue(mManager.getSize(PackageCacheManager.TIER_IDS) > 0);
+
+        assertThat(resolver.getString(EXISTING_LAUNCHABLE_PACKAGE,
+                EXISTING_STRING_RESOURCE_FULL_NAME, null), is(EXISTING_STRING_VALUE));
+        assertThat(mPackageManager.getResourcesRequests(), is(2));
+        int identifiers = mPackageManager.getIdentifierRequests();
+        resolver.getColor(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_COLOR_RESOURCE_FULL_NAME,
+                DEFAULT_COLOR);
+        assertThat(mPackageManager.getIdentifierRequests(), is(identifiers));
+    }
+
+    @Test
+    public void onTrimMemory_metaDataShed() {
+        mUtils.getMetaString(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_META_TAG);
+        int requests = mPackageManager.getApplicationInfoRequests();
+        mManager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        mUtils.getMetaString(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_META_TAG);
+        assertThat(mPackageManager.getApplicationInfoRequests(), is(requests));
+
+        mManager.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+        mUtils.getMetaString(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_META_TAG);
+        assertThat(mPackageManager.getApplicationInfoRequests(), is(requests + 1));
+    }
+
+    @Test
+    public void trimToSize_everythingShed() {
+        mUtils.getMetaString(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_META_TAG);
+        mUtils.getResolver().getColor(EXISTING_LAUNCHABLE_PACKAGE,
+                EXISTING_COLOR_RESOURCE_FULL_NAME, DEFAULT_COLOR);
+        long size = mManager.getSize();
+        assertTrue(size > 0);
+        assertThat(mManager.trimToSize(0L), is(size));
+        assertThat(mManager.getSize(), is(0L));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class PackageFanOutTest {
+    private static final int PACKAGES_COUNT = 100;
+    private static final int MANY_PACKAGES_COUNT = 1000;
+    private static final int PARALLELISM = 8;
+    private static final int MAX_IN_FLIGHT = 2;
+
+    private PackageFanOut mFanOut;
+    private List<String> mPackageNames;
+
+    @Before
+    public void setUp() {
+        mFanOut = new PackageFanOut(PARALLELISM, MAX_IN_FLIGHT);
+        mPackageNames = new ArrayList<>(PACKAGES_COUNT);
+        for (int i = 0; i < PACKAGES_COUNT; i++) {
+            mPackageNames.add("com.yotadevices.package" + i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mFanOut.shutdown();
+    }
+
+    @Test
+    public void invoke_preservesOrder() {
+        List<Integer> lengths = mFanOut.invoke(mPackageNames, new PackageFanOut.Query<Integer>() {
+            @Override
+            public Integer query(String packageName) {
+                return packageName.length();
+            }
+        });
+        assertThat(lengths.size(), is(PACKAGES_COUNT));
+        for (int i = 0; i < PACKAGES_COUNT; i++) {
+            assertThat(lengths.get(i), is(mPackageNames.get(i).length()));
+        }
+    }
+
+    @Test
+    public void invoke_limitsInFlightQueries() {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        mFanOut.invoke(mPackageNames, new PackageFanOut.Query<Void>() {
+            @Override
+            public Void query(String packageName) {
+                int current = inFlight.incrementAndGet();
+                int max;
+                while ((max = maxInFlight.get()) < current
+                        && !maxInFlight.compareAndSet(max, current)) { /* retry */ }
+                Thread.yield();
+                inFlight.decrementAndGet();
+                return null;
+            }
+        });
+        assertTrue(maxInFlight.get() <= MAX_IN_FLIGHT);
+    }
+
+    @Test
+    public void invoke_manyPackages_poolStaysBounded() {
+        List<String> packageNames = new ArrayList<>(MANY_PACKAGES_COUNT);
+        for (int i = 0; i < MANY_PACKAGES_COUNT; i++) {
+            packageNames.add("com.yotadevices.package" + i);
+        }
+        final Set<Thread> threads = Collections.newSetFromMap(
+                new ConcurrentHashMap<Thread, Boolean>());
+        mFanOut.invoke(packageNames, new PackageFanOut.Query<Void>() {
+            @Override
+            public Void query(String packageName) {
+                threads.add(Thread.currentThread());
+                try {
+                    Thread.sleep(1L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        });
+        // every running query may be replaced by one thread
+        assertTrue(threads.size() <= PARALLELISM + MAX_IN_FLIGHT);
+    }
+
+    @Test(expected = CancellationException.class)
+    public void submit_cancel_skipsQueries() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final AtomicInteger queried = new AtomicInteger();
+        ForkJoinTask<List<Void>> task = mFanOut.submit(mPackageNames,
+                new PackageFanOut.Query<Void>() {
+                    @Override
+                    public Void query(String packageName) {
+                        queried.incrementAndGet();
+                        started.countDown();
+                        try {
+                            cancelled.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return null;
+                    }
+                });
+        started.await();
+        task.cancel(true);
+        cancelled.countDown();
+        try {
+            task.join();
+        } finally {
+            assertTrue(queried.get() < PACKAGES_COUNT);
+        }
+    }
+}
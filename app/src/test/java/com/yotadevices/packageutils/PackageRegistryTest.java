@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import org.junit.Test;
+
+import static com.yotadevices.packageutils.Utilities.EXISTING_LAUNCHABLE_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.EXISTING_SYSTEM_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.NOT_EXISTING_PACKAGE;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class PackageRegistryTest {
+
+    @Test
+    public void register_denseHandles() {
+        PackageRegistry registry = new PackageRegistry();
+        assertThat(registry.register(EXISTING_LAUNCHABLE_PACKAGE), is(0));
+        assertThat(registry.register(EXISTING_SYSTEM_PACKAGE), is(1));
+        assertThat(registry.register(EXISTING_LAUNCHABLE_PACKAGE), is(0));
+        assertThat(registry.size(), is(2));
+    }
+
+    @Test
+    public void register_growsBeyondInitialCapacity() {
+        PackageRegistry registry = new PackageRegistry();
+        for (int i = 0; i < 1000; i++) {
+            assertThat(registry.register("com.yotadevices.package" + i), is(i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertThat(registry.getPackageName(i), is("com.yotadevices.package" + i));
+        }
+    }
+
+    @Test
+    public void getHandle_notRegistered() {
+        PackageRegistry registry = new PackageRegistry();
+        assertThat(registry.getHandle(NOT_EXISTING_PACKAGE), is(PackageRegistry.NO_HANDLE));
+        assertThat(registry.size(), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getPackageName_unknownHandle_throwException() {
+        new PackageRegistry().getPackageName(0);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.Locale;
+
+import static com.yotadevices.packageutils.Utilities.EXISTING_LAUNCHABLE_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.EXISTING_META_TAG;
+import static com.yotadevices.packageutils.Utilities.EXISTING_PACKAGES;
+import static com.yotadevices.packageutils.Utilities.EXISTING_RES_ID;
+import static com.yotadevices.packageutils.Utilities.EXISTING_STRING_VALUE;
+import static com.yotadevices.packageutils.Utilities.EXISTING_SYSTEM_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.EXISTING_UPDATED_SYSTEM_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.LAST_UPDATE_TIME;
+import static com.yotadevices.packageutils.Utilities.NOT_EXISTING_META_TAG;
+import static com.yotadevices.packageutils.Utilities.NOT_EXISTING_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.VERSION_CODE;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class PackageSnapshotTest {
+    private static final String STALE_LABEL = "stale";
+    private static final String OTHER_META_TAG = "other_tag";
+    private static final long TIMEOUT = 5000L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private DummyPackageManager mPackageManager;
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mPackageManager = new DummyPackageManager();
+        PackageUtils.instantiate(mPackageManager).setMetaDataProjection(EXISTING_META_TAG);
+        mFile = new File(mFolder.getRoot(), "packages.snapshot");
+    }
+
+    @Test
+    public void loadSnapshot_servedWithoutPackageManager() throws IOException {
+        String metaString = PackageUtils.getInstance()
+                .getMetaString(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_META_TAG);
+        PackageUtils.getInstance().saveSnapshot(mFile);
+        PackageUtils instance = PackageUtils.instantiate(mPackageManager);
+        assertTrue(instance.loadSnapshot(mFile));
+        assertThat(instance.getSnapshot().size(), is(EXISTING_PACKAGES.size()));
+
+        int requests = mPackageManager.getApplicationInfoRequests();
+        assertTrue(instance.isPackageInstalled(EXISTING_LAUNCHABLE_PACKAGE));
+        assertFalse(instance.isDeletable(EXISTING_SYSTEM_PACKAGE));
+        assertTrue(instance.isDeletable(EXISTING_LAUNCHABLE_PACKAGE));
+        assertTrue(instance.isUpdatedSystemApp(EXISTING_UPDATED_SYSTEM_PACKAGE));
+        assertThat(instance.getLabel(EXISTING_LAUNCHABLE_PACKAGE),
+                is(EXISTING_LAUNCHABLE_PACKAGE));
+        assertThat(instance.getMetaString(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_META_TAG),
+                is(metaString));
+        assertThat(mPackageManager.getApplicationInfoRequests(), is(requests));
+    }
+
+    @Test
+    public void loadSnapshot_metaDataServed() throws IOException {
+        writeMetaDataSnapshot();
+        PackageUtils instance = PackageUtils.getInstance();
+        assertTrue(instance.loadSnapshot(mFile));
+
+        int requests = mPackageManager.getApplicationInfoRequests();
+        assertThat(instance.getMetaString(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_META_TAG),
+                is(EXISTING_STRING_VALUE));
+        assertThat(mPackageManager.getApplicationInfoRequests(), is(requests));
+    }
+
+    @Test
+    public void load_metaData_remappedToStoreTags() throws IOException {
+        writeMetaDataSnapshot();
+        PackageSnapshot snapshot = PackageSnapshot.load(mFile);
+        PackageSnapshot.Record record = snapshot.get(EXISTING_LAUNCHABLE_PACKAGE);
+        PackageRegistry registry = new PackageRegistry();
+
+        MetaDataStore.Entry entry = snapshot.getMetaData(record,
+                new MetaDataStore(registry, EXISTING_META_TAG, OTHER_META_TAG));
+        assertMetaString(entry, 0);
+        assertMetaResource(entry, 1);
+
+        entry = snapshot.getMetaData(record,
+                new MetaDataStore(registry, OTHER_META_TAG, EXISTING_META_TAG));
+        assertMetaResource(entry, 0);
+        assertMetaString(entry, 1);
+
+        entry = snapshot.getMetaData(record, new MetaDataStore(registry, OTHER_META_TAG));
+        assertMetaResource(entry, 0);
+
+        assertNull(snapshot.getMetaData(record,
+                new MetaDataStore(registry, EXISTING_META_TAG, NOT_EXISTING_META_TAG)));
+    }
+
+    @Test
+    public void loadSnapshot_updatedPackage_dropped() throws Exception {
+        writeSnapshot(EXISTING_LAUNCHABLE_PACKAGE, LAST_UPDATE_TIME - 1);
+        PackageUtils instance = PackageUtils.getInstance();
+        assertTrue(instance.loadSnapshot(mFile));
+        assertThat(instance.getLabel(EXISTING_LAUNCHABLE_PACKAGE), is(STALE_LABEL));
+        awaitDropped(instance.getSnapshot(), EXISTING_LAUNCHABLE_PACKAGE);
+        assertThat(instance.getLabel(EXISTING_LAUNCHABLE_PACKAGE),
+                is(EXISTING_LAUNCHABLE_PACKAGE));
+    }
+
+    @Test
+    public void loadSnapshot_removedPackage_dropped() throws Exception {
+        writeSnapshot(NOT_EXISTING_PACKAGE, LAST_UPDATE_TIME);
+        PackageUtils instance = PackageUtils.getInstance();
+        assertTrue(instance.loadSnapshot(mFile));
+        assertTrue(instance.isPackageInstalled(NOT_EXISTING_PACKAGE));
+        awaitDropped(instance.getSnapshot(), NOT_EXISTING_PACKAGE);
+        assertFalse(instance.isPackageInstalled(NOT_EXISTING_PACKAGE));
+    }
+
+    @Test
+    public void loadSnapshot_invalidFile_notLoaded() throws IOException {
+        PackageUtils instance = PackageUtils.getInstance();
+        assertFalse(instance.loadSnapshot(mFile));
+
+        try (DataOutputStream output = new DataOutputStream(new FileOutputStream(mFile))) {
+            output.writeInt(0x504b4753);
+            output.writeInt(PackageSnapshot.VERSION + 1);
+        }
+        assertFalse(instance.loadSnapshot(mFile));
+
+        writeSnapshot(EXISTING_LAUNCHABLE_PACKAGE, LAST_UPDATE_TIME);
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+        assertFalse(instance.loadSnapshot(mFile));
+    }
+
+    @Test
+    public void loadSnapshot_otherLocale_labelQueried() throws IOException {
+        Locale locale = Locale.getDefault();
+        Locale other = Locale.JAPAN.equals(locale) ? Locale.GERMANY : Locale.JAPAN;
+        writeSnapshot(EXISTING_LAUNCHABLE_PACKAGE, LAST_UPDATE_TIME, other);
+        PackageUtils instance = PackageUtils.getInstance();
+        assertTrue(instance.loadSnapshot(mFile));
+        assertThat(instance.getSnapshot().getLocale(), is(other));
+        assertThat(instance.getLabel(EXISTING_LAUNCHABLE_PACKAGE),
+                is(EXISTING_LAUNCHABLE_PACKAGE));
+
+        writeSnapshot(EXISTING_LAUNCHABLE_PACKAGE, LAST_UPDATE_TIME);
+        instance = PackageUtils.instantiate(mPackageManager);
+        assertTrue(instance.loadSnapshot(mFile));
+        assertThat(instance.getLabel(EXISTING_LAUNCHABLE_PACKAGE), is(STALE_LABEL));
+        Locale.setDefault(other);
+        try {
+            assertThat(instance.getLabel(EXISTING_LAUNCHABLE_PACKAGE),
+                    is(EXISTING_LAUNCHABLE_PACKAGE));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    private void writeSnapshot(String packageName, long lastUpdateTime) throws IOException {
+        writeSnapshot(packageName, lastUpdateTime, Locale.getDefault());
+    }
+
+    private void writeSnapshot(String packageName, long lastUpdateTime, Locale locale)
+            throws IOException {
+        PackageSnapshot.write(mFile, locale, new String[]{EXISTING_META_TAG},
+                Collections.singletonList(
+                        new PackageSnapshot.Record(packageName, 0, VERSION_CODE,
+                                lastUpdateTime, STALE_LABEL,
+                                MetaDataStore.Entry.NO_META_DATA)));
+    }
+
+    /**
+     * Writes a snapshot of the {@code EXISTING_LAUNCHABLE_PACKAGE} with a string value under
+     * the {@code EXISTING_META_TAG} and a resource id under the {@code OTHER_META_TAG}.
+     */
+    private void writeMetaDataSnapshot() throws IOException {
+        PackageSnapshot.write(mFile, Locale.getDefault(),
+                new String[]{EXISTING_META_TAG, OTHER_META_TAG},
+                Collections.singletonList(
+                        new PackageSnapshot.Record(EXISTING_LAUNCHABLE_PACKAGE, 0, VERSION_CODE,
+                                LAST_UPDATE_TIME, STALE_LABEL, new MetaDataStore.Entry(
+                                new String[]{EXISTING_STRING_VALUE, null},
+                                new int[]{0, EXISTING_RES_ID}))));
+    }
+
+    private static void assertMetaString(MetaDataStore.Entry entry, int index) {
+        assertTrue(entry.hasMetaData());
+        assertThat(entry.getString(index), is(EXISTING_STRING_VALUE));
+        assertThat(entry.getResource(index), is(0));
+    }
+
+    private static void assertMetaResource(MetaDataStore.Entry entry, int index) {
+        assertTrue(entry.hasMetaData());
+        assertNull(entry.getString(index));
+        assertThat(entry.getResource(index), is(EXISTING_RES_ID));
+    }
+
+    private static void awaitDropped(PackageSnapshot snapshot, String packageName)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (snapshot.contains(packageName) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertFalse(snapshot.contains(packageName));
+    }
+}
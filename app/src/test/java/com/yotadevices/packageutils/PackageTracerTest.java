@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.yotadevices.packageutils.Utilities.EXISTING_LAUNCHABLE_PACKAGE;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class PackageTracerTest {
+
+    @After
+    public void tearDown() {
+        PackageUtils.instantiate(new DummyPackageManager()).setTracer(null);
+    }
+
+    @Test
+    public void setTracer_recordsMethodAndBinderSpans() {
+        PackageTracer tracer = new PackageTracer();
+        PackageUtils instance = PackageUtils.instantiate(new DummyPackageManager());
+        instance.setTracer(tracer);
+        instance.getIcon(EXISTING_LAUNCHABLE_PACKAGE);
+
+        String trace = tracer.toChromeTrace();
+        assertTrue(trace.startsWith("{\"traceEvents\":["));
+        assertTrue(trace.contains("{\"name\":\"getIcon\",\"cat\":\"PackageUtils\",\"ph\":\"B\""));
+        assertTrue(trace.contains("{\"name\":\"getIcon\",\"cat\":\"PackageUtils\",\"ph\":\"E\""));
+        assertTrue(trace.contains("{\"name\":\"getApplicationIcon\",\"cat\":\"PackageManager\""));
+        assertTrue(trace.contains("\"args\":{\"package\":\"" + EXISTING_LAUNCHABLE_PACKAGE + "\"}"));
+        assertTrue(trace.indexOf("\"ph\":\"B\"") < trace.indexOf("\"ph\":\"E\""));
+    }
+
+    @Test
+    public void writeChromeTrace_keepsLatestEvents() {
+        PackageTracer tracer = new PackageTracer(3);
+        for (int i = 0; i < 10; i++) {
+            tracer.begin(PackageTracer.CATEGORY_PACKAGE_UTILS, "span" + i, null);
+        }
+        String trace = tracer.toChromeTrace();
+        assertFalse(trace.contains("\"span5\""));
+        for (int i = 6; i < 10; i++) {
+            assertTrue(trace.contains("\"span" + i + "\""));
+        }
+    }
+
+    @Test
+    public void writeChromeTrace_escapesStrings() {
+        PackageTracer tracer = new PackageTracer();
+        tracer.begin(PackageTracer.CATEGORY_RESOURCES, "a\"b\\c\n", null);
+        assertTrue(tracer.toChromeTrace().contains("\"a\\\"b\\\\c\\u000a\""));
+    }
+
+    @Test(timeout = 30000L)
+    public void writeChromeTrace_concurrentWriters_consistentEvents() throws Exception {
+        final PackageTracer tracer = new PackageTracer(8);
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final CountDownLatch started = new CountDownLatch(4);
+        Thread[] writers = new Thread[4];
+        for (int w = 0; w < writers.length; w++) {
+            final String writer = "w" + w;
+            writers[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    for (int i = 0; !stopped.get(); i++) {
+                        // name, package and phase of an event are derived from each other
+                        String value = writer + "-" + i;
+                        if (0 == i % 2) {
+                            tracer.begin(PackageTracer.CATEGORY_PACKAGE_UTILS, value, value);
+                        } else {
+                            tracer.end(PackageTracer.CATEGORY_RESOURCES, value, value);
+                        }
+                    }
+                }
+            });
+            writers[w].start();
+        }
+        Pattern event = Pattern.compile("\\{\"name\":\"(w\\d+-(\\d+))\",\"cat\":\"(\\w+)\","
+                + "\"ph\":\"(\\w)\",.*\"package\":\"([^\"]*)\"");
+        started.await();
+        try {
+            for (int export = 0; export < 200; export++) {
+                for (String line : tracer.toChromeTrace().split("\n")) {
+                    if (!line.contains("\"name\"")) continue;
+                    Matcher matcher = event.matcher(line);
+                    assertTrue(line, matcher.find());
+                    boolean begin = 0 == Integer.parseInt(matcher.group(2)) % 2;
+                    assertThat(line, matcher.group(5), is(matcher.group(1)));
+                    assertThat(line, matcher.group(3), is(begin
+                            ? PackageTracer.CATEGORY_PACKAGE_UTILS
+                            : PackageTracer.CATEGORY_RESOURCES));
+                    assertThat(line, matcher.group(4), is(begin ? "B" : "E"));
+                }
+            }
+        } finally {
+            stopped.set(true);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+    }
+}
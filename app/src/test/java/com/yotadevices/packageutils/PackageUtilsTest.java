@@ -15,29 +15,40 @@
  */
 package com.yotadevices.packageutils;
 
-import android.content.pm.PackageManager;
+import android.content.pm.ApplicationInfo;
+import android.graphics.drawable.Drawable;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
 import static com.yotadevices.packageutils.Utilities.EMPTY_STRING;
 import static com.yotadevices.packageutils.Utilities.EXISTING_LAUNCHABLE_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.EXISTING_META_TAG;
 import static com.yotadevices.packageutils.Utilities.EXISTING_NOT_LAUNCHABLE_PACKAGE;
 import static com.yotadevices.packageutils.Utilities.EXISTING_STRING_RESOURCE_FULL_NAME;
+import static com.yotadevices.packageutils.Utilities.EXISTING_STRING_RESOURCE_NAME;
 import static com.yotadevices.packageutils.Utilities.EXISTING_STRING_VALUE;
 import static com.yotadevices.packageutils.Utilities.EXISTING_SYSTEM_PACKAGE;
 import static com.yotadevices.packageutils.Utilities.EXISTING_UPDATED_SYSTEM_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.EXPORTED_ACTIVITY;
 import static com.yotadevices.packageutils.Utilities.INVALID_RES_NAME_NO_AT;
 import static com.yotadevices.packageutils.Utilities.INVALID_RES_NAME_PURE_STRING;
 import static com.yotadevices.packageutils.Utilities.INVALID_RES_NAME_TWO_AT;
 import static com.yotadevices.packageutils.Utilities.INVALID_RES_NAME_TWO_SLASHES;
 import static com.yotadevices.packageutils.Utilities.INVALID_RES_NAME_WHITESPACE;
+import static com.yotadevices.packageutils.Utilities.NOT_EXISTING_META_TAG;
 import static com.yotadevices.packageutils.Utilities.NOT_EXISTING_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.PRIVATE_ACTIVITY;
 import static com.yotadevices.packageutils.Utilities.RES_NAME;
 import static com.yotadevices.packageutils.Utilities.RES_NAME_PLATFORM;
 import static com.yotadevices.packageutils.Utilities.RES_NAME_UNDERSCORE;
 import static com.yotadevices.packageutils.Utilities.TYPE_DRAWABLE;
 import static com.yotadevices.packageutils.Utilities.TYPE_STRING;
+import static com.yotadevices.packageutils.Utilities.USELESS_DRAWABLE;
 import static com.yotadevices.packageutils.Utilities.VALID_ANDROID_RES_NAME;
 import static com.yotadevices.packageutils.Utilities.VALID_RES_NAME_DRAWABLE;
 import static com.yotadevices.packageutils.Utilities.VALID_RES_NAME_UNDERSCORE;
@@ -45,6 +56,7 @@ import static com.yotadevices.packageutils.Utilities.createApplicationInfo;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNull;
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -53,12 +65,12 @@ import static org.junit.Assert.assertTrue;
  * @author Vitalii Dmitriev
  */
 public class PackageUtilsTest {
-    private PackageManager mPackageManager;
+    private DummyPackageManager mPackageManager;
 
     @Before
     public void setUp() throws Exception {
         mPackageManager = new DummyPackageManager();
-        PackageUtils.instantiate(mPackageManager);
+        PackageUtils.instantiate(mPackageManager).setMetaDataProjection();
     }
 
     @Test
@@ -196,6 +208,24 @@ public class PackageUtilsTest {
         assertFalse(PackageUtils.isValidResourceName(null));
     }
 
+    @Test
+    public void isValidResourceName_sameAsRegExp() {
+        Pattern pattern = Pattern.compile(PackageUtils.RES_NAME_REG_EXP);
+        String[] names = {
+                VALID_RES_NAME_DRAWABLE, VALID_RES_NAME_UNDERSCORE, VALID_ANDROID_RES_NAME,
+                INVALID_RES_NAME_NO_AT, INVALID_RES_NAME_TWO_SLASHES, INVALID_RES_NAME_WHITESPACE,
+                INVALID_RES_NAME_PURE_STRING, INVALID_RES_NAME_TWO_AT, EMPTY_STRING,
+                "@android/x", "@android:/x", "@android:x/", "@a:b/c", "@string/name\n",
+                "@string/name\r\n", "@string/\u0438\u043c\u044f", "@\u00e9/x", "@/x", "@x/",
+                "@/", "@", "@android:", "@android:android:x/y", "@x/y/z", "@x//y", "@x/y z",
+                "@x-y/z", "@X_1/Y_2", "@1/2", " @x/y", "@x/y ", "@android:string/ok"
+        };
+        for (String name : names) {
+            assertThat(name, PackageUtils.isValidResourceName(name),
+                    is(pattern.matcher(name).matches()));
+        }
+    }
+
     @Test
     public void isPackageInstalled_returnTrue() {
         PackageUtils instance = PackageUtils.getInstance();
@@ -209,4 +239,181 @@ public class PackageUtilsTest {
     public void isPackageInstalled_returnFalse() {
         assertFalse(PackageUtils.getInstance().isPackageInstalled(NOT_EXISTING_PACKAGE));
     }
+
+    @Test
+    public void getPackagesFingerprint_sameValue() {
+        PackageUtils instance = PackageUtils.getInstance();
+        long fingerprint = instance.getPackagesFingerprint();
+        assertThat(fingerprint, not(PackagesFingerprint.EMPTY));
+        instance.onPackageChanged(EXISTING_LAUNCHABLE_PACKAGE);
+        assertThat(instance.getPackagesFingerprint(), is(fingerprint));
+    }
+
+    @Test
+    public void getPackagesFingerprint_packageRemoved() {
+        PackageUtils instance = PackageUtils.getInstance();
+        long fingerprint = instance.getPackagesFingerprint();
+        instance.onPackageChanged(NOT_EXISTING_PACKAGE);
+        assertThat(instance.getPackagesFingerprint(), is(fingerprint));
+
+        mPackageManager.removePackage(EXISTING_LAUNCHABLE_PACKAGE);
+        instance.onPackageChanged(EXISTING_LAUNCHABLE_PACKAGE);
+        long removed = instance.getPackagesFingerprint();
+        assertThat(removed, not(fingerprint));
+        assertThat(removed, is(PackageUtils.instantiate(mPackageManager).getPackagesFingerprint()));
+    }
+
+    @Test
+    public void getIcons_preservesOrder() {
+        List<String> packageNames = Arrays.asList(EXISTING_LAUNCHABLE_PACKAGE,
+                NOT_EXISTING_PACKAGE, EXISTING_SYSTEM_PACKAGE);
+        List<Drawable> icons = PackageUtils.getInstance().getIcons(packageNames);
+        assertThat(icons.size(), is(packageNames.size()));
+        assertThat(icons.get(0), is(USELESS_DRAWABLE));
+        assertNull(icons.get(1));
+        assertThat(icons.get(2), is(USELESS_DRAWABLE));
+    }
+
+    @Test
+    public void getResourceStrings_returnStrings() {
+        List<String> strings = PackageUtils.getInstance().getResourceStrings(
+                Arrays.asList(EXISTING_LAUNCHABLE_PACKAGE, NOT_EXISTING_PACKAGE),
+                EXISTING_STRING_RESOURCE_NAME);
+        assertThat(strings, is(Arrays.asList(EXISTING_STRING_VALUE, EXISTING_STRING_RESOURCE_NAME)));
+    }
+
+    @Test
+    public void handleOverloads_sameAsPackageName() {
+        PackageUtils instance = PackageUtils.getInstance();
+        int launchable = instance.getRegistry().register(EXISTING_LAUNCHABLE_PACKAGE);
+        int notExisting = instance.getRegistry().register(NOT_EXISTING_PACKAGE);
+        assertTrue(instance.isPackageInstalled(launchable));
+        assertFalse(instance.isPackageInstalled(notExisting));
+        assertThat(instance.getIcon(launchable), is(USELESS_DRAWABLE));
+        assertNull(instance.getIcon(notExisting));
+        assertThat(instance.getStringByName(launchable, EXISTING_STRING_RESOURCE_FULL_NAME),
+                is(EXISTING_STRING_VALUE));
+    }
+
+    @Test
+    public void handleOverloads_noHandle_notInstalled() {
+        PackageUtils instance = PackageUtils.getInstance();
+        int handle = instance.getRegistry().getHandle(NOT_EXISTING_PACKAGE + ".unregistered");
+        assertThat(handle, is(PackageRegistry.NO_HANDLE));
+        assertFalse(instance.isPackageInstalled(handle));
+        assertNull(instance.getIcon(handle));
+        assertThat(instance.getMetaString(handle, EXISTING_META_TAG), is(EMPTY_STRING));
+        assertNull(instance.getMetaStringArray(handle, EXISTING_META_TAG));
+        assertThat(instance.getResourceString(handle, EXISTING_STRING_RESOURCE_NAME),
+                is(EXISTING_STRING_RESOURCE_NAME));
+        assertThat(instance.getStringByName(handle, EXISTING_STRING_RESOURCE_FULL_NAME),
+                is(EXISTING_STRING_RESOURCE_NAME));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void handleOverloads_unknownHandle_throwException() {
+        PackageUtils instance = PackageUtils.getInstance();
+        instance.isPackageInstalled(instance.getRegistry().size());
+    }
+
+    @Test
+    public void getExternalIntent_exportedActivity_returnIntent() {
+        PackageUtils instance = PackageUtils.getInstance();
+        assertNotNull(instance.getExternalIntent(EXISTING_LAUNCHABLE_PACKAGE, EXPORTED_ACTIVITY));
+        assertNull(instance.getExternalIntent(EXISTING_LAUNCHABLE_PACKAGE, PRIVATE_ACTIVITY));
+    }
+
+    @Test
+    public void getExternalIntent_noActivity_returnLaunchIntent() {
+        PackageUtils instance = PackageUtils.getInstance();
+        assertNotNull(instance.getExternalIntent(EXISTING_LAUNCHABLE_PACKAGE, null));
+        assertNotNull(instance.getExternalIntent(EXISTING_LAUNCHABLE_PACKAGE, EMPTY_STRING));
+        assertNull(instance.getExternalIntent(EXISTING_NOT_LAUNCHABLE_PACKAGE, EMPTY_STRING));
+    }
+
+    @Test
+    public void getMetaString_projected_loadedOnce() {
+        PackageUtils instance = PackageUtils.getInstance();
+        String expected = instance.getMetaString(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_META_TAG);
+        instance.setMetaDataProjection(EXISTING_META_TAG);
+        int requests = mPackageManager.getApplicationInfoRequests();
+        for (int i = 0; i < 3; i++) {
+            assertThat(instance.getMetaString(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_META_TAG),
+                    is(expected));
+            assertNull(instance.getMetaStringArray(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_META_TAG));
+        }
+        assertThat(mPackageManager.getApplicationInfoRequests(), is(requests + 1));
+
+        instance.onPackageChanged(EXISTING_LAUNCHABLE_PACKAGE);
+        instance.getMetaString(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_META_TAG);
+        assertThat(mPackageManager.getApplicationInfoRequests(), is(requests + 2));
+    }
+
+    @Test
+    public void getMetaString_unknownPackage_notRegistered() {
+        PackageUtils instance = PackageUtils.getInstance();
+        // other tests register the NOT_EXISTING_PACKAGE in the shared registry
+        String unknown = NOT_EXISTING_PACKAGE + ".unknown";
+        assertThat(instance.getMetaString(null, EXISTING_META_TAG), is(EMPTY_STRING));
+        assertNull(instance.getMetaStringArray(null, EXISTING_META_TAG));
+        assertThat(instance.getMetaString(unknown, EXISTING_META_TAG), is(EMPTY_STRING));
+        instance.setMetaDataProjection(EXISTING_META_TAG);
+        assertThat(instance.getMetaString(null, EXISTING_META_TAG), is(EMPTY_STRING));
+        assertThat(instance.getMetaString(unknown, EXISTING_META_TAG), is(EMPTY_STRING));
+        assertNull(instance.getMetaStringArray(unknown, EXISTING_META_TAG));
+        assertThat(instance.getRegistry().getHandle(unknown), is(PackageRegistry.NO_HANDLE));
+    }
+
+    @Test
+    public void getMetaString_changedDuringLoad_notKept() {
+        mPackageManager = new DummyPackageManager() {
+            private boolean mChanged;
+
+            @Override
+            public ApplicationInfo getApplicationInfo(String packageName, int flags)
+                    throws NameNotFoundException {
+                ApplicationInfo info = super.getApplicationInfo(packageName, flags);
+                if (!mChanged) {
+                    mChanged = true;
+                    PackageUtils.getInstance().onPackageChanged(packageName);
+                }
+                return info;
+            }
+        };
+        PackageUtils instance = PackageUtils.instantiate(mPackageManager);
+        instance.setMetaDataProjection(EXISTING_META_TAG);
+        for (int i = 0; i < 3; i++) {
+            instance.getMetaString(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_META_TAG);
+        }
+        assertThat(mPackageManager.getApplicationInfoRequests(), is(2));
+    }
+
+    @Test
+    public void getMetaString_notProjected_loadedEveryTime() {
+        PackageUtils instance = PackageUtils.getInstance();
+        instance.setMetaDataProjection(EXISTING_META_TAG);
+        int requests = mPackageManager.getApplicationInfoRequests();
+        instance.getMetaString(EXISTING_LAUNCHABLE_PACKAGE, NOT_EXISTING_META_TAG);
+        instance.getMetaString(EXISTING_LAUNCHABLE_PACKAGE, NOT_EXISTING_META_TAG);
+        assertThat(mPackageManager.getApplicationInfoRequests(), is(requests + 2));
+    }
+
+    @Test
+    public void getIcon_withinBudget_returnIcon() {
+        assertThat(PackageUtils.getInstance().getIcon(EXISTING_LAUNCHABLE_PACKAGE, 5000L, null,
+                null), is(USELESS_DRAWABLE));
+        assertThat(PackageUtils.getInstance().getResourceString(EXISTING_LAUNCHABLE_PACKAGE,
+                EXISTING_STRING_RESOURCE_NAME, 5000L, EMPTY_STRING, null),
+                is(EXISTING_STRING_VALUE));
+    }
+
+    @Test
+    public void withinBudget_nullPackage_returnDefault() {
+        PackageUtils instance = PackageUtils.getInstance();
+        assertThat(instance.getMetaString(null, EXISTING_META_TAG, 5000L, null, null),
+                is(EMPTY_STRING));
+        assertThat(instance.getResourceString(null, EXISTING_STRING_RESOURCE_NAME, 5000L,
+                EMPTY_STRING, null), is(EXISTING_STRING_RESOURCE_NAME));
+        assertNull(instance.getIcon(null, 5000L, USELESS_DRAWABLE, null));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import android.content.pm.PackageInfo;
+
+import org.junit.Test;
+
+import static com.yotadevices.packageutils.Utilities.EXISTING_LAUNCHABLE_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.EXISTING_PACKAGES;
+import static com.yotadevices.packageutils.Utilities.EXISTING_SYSTEM_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.createPackageInfo;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertThat;
+
+public class PackagesFingerprintTest {
+
+    @Test
+    public void getValue_empty() {
+        assertThat(new PackagesFingerprint().getValue(), is(PackagesFingerprint.EMPTY));
+    }
+
+    @Test
+    public void getValue_orderIndependent() {
+        PackagesFingerprint forward = new PackagesFingerprint();
+        PackagesFingerprint backward = new PackagesFingerprint();
+        for (int i = 0; i < EXISTING_PACKAGES.size(); i++) {
+            forward.put(createPackageInfo(EXISTING_PACKAGES.get(i)));
+            backward.put(createPackageInfo(EXISTING_PACKAGES.get(EXISTING_PACKAGES.size() - 1 - i)));
+        }
+        assertThat(forward.getValue(), is(backward.getValue()));
+        assertThat(forward.size(), is(EXISTING_PACKAGES.size()));
+    }
+
+    @Test
+    public void put_updatedPackage_changesValue() {
+        PackagesFingerprint fingerprint = new PackagesFingerprint();
+        fingerprint.put(createPackageInfo(EXISTING_LAUNCHABLE_PACKAGE));
+        long installed = fingerprint.getValue();
+
+        PackageInfo updated = createPackageInfo(EXISTING_LAUNCHABLE_PACKAGE);
+        updated.lastUpdateTime++;
+        fingerprint.put(updated);
+        assertThat(fingerprint.getValue(), not(installed));
+        assertThat(fingerprint.size(), is(1));
+
+        PackageInfo upgraded = createPackageInfo(EXISTING_LAUNCHABLE_PACKAGE);
+        upgraded.versionCode++;
+        fingerprint.put(upgraded);
+        assertThat(fingerprint.getValue(), not(installed));
+
+        fingerprint.put(createPackageInfo(EXISTING_LAUNCHABLE_PACKAGE));
+        assertThat(fingerprint.getValue(), is(installed));
+    }
+
+    @Test
+    public void remove_restoresValue() {
+        PackagesFingerprint fingerprint = new PackagesFingerprint();
+        fingerprint.put(createPackageInfo(EXISTING_LAUNCHABLE_PACKAGE));
+        long before = fingerprint.getValue();
+        fingerprint.put(createPackageInfo(EXISTING_SYSTEM_PACKAGE));
+        fingerprint.remove(EXISTING_SYSTEM_PACKAGE);
+        assertThat(fingerprint.getValue(), is(before));
+        fingerprint.remove(EXISTING_LAUNCHABLE_PACKAGE);
+        assertThat(fingerprint.getValue(), is(PackagesFingerprint.EMPTY));
+    }
+}
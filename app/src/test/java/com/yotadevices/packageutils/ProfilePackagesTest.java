@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import android.content.pm.LauncherApps;
+import android.os.Parcel;
+import android.os.UserHandle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ProfilePackagesTest {
+    private static final String PERSONAL_PACKAGE = "com.example.personal";
+    private static final String WORK_PACKAGE = "com.example.work";
+    private static final String SHARED_PACKAGE = "com.example.shared";
+
+    private final UserHandle mPersonal = new UserHandle((Parcel) null);
+    private final UserHandle mWork = new UserHandle((Parcel) null);
+    private FakeSource mSource;
+    private ExecutorService mExecutor;
+    private ProfilePackages mPackages;
+
+    @Before
+    public void setUp() {
+        mSource = new FakeSource();
+        mSource.mPackages.put(mPersonal,
+                Arrays.asList(PERSONAL_PACKAGE, SHARED_PACKAGE, PERSONAL_PACKAGE));
+        mSource.mPackages.put(mWork, Arrays.asList(SHARED_PACKAGE, WORK_PACKAGE));
+        mExecutor = Executors.newFixedThreadPool(2);
+        mPackages = new ProfilePackages(mSource, mExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void getPackages_mergedAndDeduplicated() {
+        List<ProfilePackages.Entry> entries = mPackages.getPackages();
+        assertThat(getPackageNames(entries),
+                is(Arrays.asList(PERSONAL_PACKAGE, SHARED_PACKAGE, WORK_PACKAGE)));
+        assertProfiles(entries.get(0).getProfiles(), mPersonal);
+        assertProfiles(entries.get(2).getProfiles(), mWork);
+    }
+
+    @Test
+    public void getPackages_profilesInUserProfilesOrder() {
+        assertProfiles(mPackages.getPackages().get(1).getProfiles(), mPersonal, mWork);
+        mSource.mProfiles = Arrays.asList(mWork, mPersonal);
+        assertProfiles(mPackages.getPackages().get(0).getProfiles(), mWork, mPersonal);
+    }
+
+    @Test
+    public void onPackageChanged_rescansChangedProfileOnly() {
+        mPackages.getPackages();
+        mPackages.getPackages();
+        assertThat(mSource.getScans(mPersonal), is(1));
+        assertThat(mSource.getScans(mWork), is(1));
+        mSource.mPackages.put(mWork, Arrays.asList(WORK_PACKAGE));
+        mPackages.onPackageChanged(SHARED_PACKAGE, mWork);
+        List<ProfilePackages.Entry> entries = mPackages.getPackages();
+        assertThat(mSource.getScans(mPersonal), is(1));
+        assertThat(mSource.getScans(mWork), is(2));
+        assertProfiles(entries.get(1).getProfiles(), mPersonal);
+    }
+
+    @Test
+    public void getPackages_changedWhileScanning_scanDropped() {
+        mSource.mChangeWhileScanning = mWork;
+        assertThat(mPackages.getPackages().size(), is(3));
+        mPackages.getPackages();
+        assertThat(mSource.getScans(mPersonal), is(1));
+        assertThat(mSource.getScans(mWork), is(2));
+        mPackages.getPackages();
+        assertThat(mSource.getScans(mWork), is(2));
+    }
+
+    @Test
+    public void getPackages_scanFailed_failedProfileReported() {
+        mSource.mFailing = mWork;
+        try {
+            mPackages.getPackages();
+            fail();
+        } catch (ProfilePackages.ScanException e) {
+            assertProfiles(e.getFailedProfiles(), mWork);
+            assertThat(getPackageNames(e.getPackages()),
+                    is(Arrays.asList(PERSONAL_PACKAGE, SHARED_PACKAGE)));
+        }
+        mSource.mFailing = null;
+        assertThat(mPackages.getPackages().size(), is(3));
+        assertThat(mSource.getScans(mPersonal), is(1));
+    }
+
+    @Test(timeout = 5000)
+    public void getPackages_onBusyExecutor_noDeadlock() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final ProfilePackages packages = new ProfilePackages(mSource, executor);
+            List<ProfilePackages.Entry> entries = executor.submit(
+                    new Callable<List<ProfilePackages.Entry>>() {
+                        @Override
+                        public List<ProfilePackages.Entry> call() {
+                            return packages.getPackages();
+                        }
+                    }).get(4, TimeUnit.SECONDS);
+            assertThat(entries.size(), is(3));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Compares profiles by identity, because {@code UserHandle#equals(Object)} of the mockable
+     * android.jar always returns false.
+     */
+    private static void assertProfiles(List<UserHandle> profiles, UserHandle... expected) {
+        assertThat(profiles.size(), is(expected.length));
+        for (int i = 0; i < expected.length; i++) {
+            assertSame(expected[i], profiles.get(i));
+        }
+    }
+
+    private static List<String> getPackageNames(List<ProfilePackages.Entry> entries) {
+        List<String> packageNames = new ArrayList<>(entries.size());
+        for (ProfilePackages.Entry entry : entries) {
+            packageNames.add(entry.getPackageName());
+        }
+        return packageNames;
+    }
+
+    private class FakeSource implements ProfilePackages.Source {
+        volatile List<UserHandle> mProfiles = Arrays.asList(mPersonal, mWork);
+        final Map<UserHandle, List<String>> mPackages = new HashMap<>();
+        private final Map<UserHandle, Integer> mScans = new HashMap<>();
+        volatile UserHandle mChangeWhileScanning;
+        volatile UserHandle mFailing;
+
+        synchronized int getScans(UserHandle profile) {
+            Integer scans = mScans.get(profile);
+            return null == scans ? 0 : scans;
+        }
+
+        @Override
+        public List<UserHandle> getUserProfiles() {
+            return mProfiles;
+        }
+
+        @Override
+        public List<String> scan(UserHandle profile) {
+            synchronized (this) {
+                mScans.put(profile, getScans(profile) + 1);
+            }
+            if (profile == mFailing) throw new IllegalStateException();
+            if (profile == mChangeWhileScanning) {
+                mChangeWhileScanning = null;
+                ProfilePackagesTest.this.mPackages.onPackageChanged(WORK_PACKAGE, profile);
+            }
+            return mPackages.get(profile);
+        }
+
+        @Override
+        public boolean isPackageEnabled(String packageName, UserHandle profile) {
+            return mPackages.get(profile).contains(packageName);
+        }
+
+        @Override
+        public void registerCallback(LauncherApps.Callback callback) {
+        }
+
+        @Override
+        public void unregisterCallback(LauncherApps.Callback callback) {
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017 Yota Devices LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yotadevices.packageutils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.yotadevices.packageutils.Utilities.EXISTING_COLOR_RESOURCE_FULL_NAME;
+import static com.yotadevices.packageutils.Utilities.EXISTING_COLOR_VALUE;
+import static com.yotadevices.packageutils.Utilities.EXISTING_LAUNCHABLE_PACKAGE;
+import static com.yotadevices.packageutils.Utilities.EXISTING_STRING_RESOURCE_FULL_NAME;
+import static com.yotadevices.packageutils.Utilities.EXISTING_STRING_RESOURCE_NAME;
+import static com.yotadevices.packageutils.Utilities.EXISTING_STRING_VALUE;
+import static com.yotadevices.packageutils.Utilities.INVALID_RES_NAME_NO_AT;
+import static com.yotadevices.packageutils.Utilities.NOT_EXISTING_STRING_RESOURCE_NAME;
+import static com.yotadevices.packageutils.Utilities.VALID_RES_NAME_UNDERSCORE;
+import static junit.framework.Assert.assertNull;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ResourceResolverTest {
+    private static final int DEFAULT_COLOR = 0xffffffff;
+
+    private DummyPackageManager mPackageManager;
+    private ResourceResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mPackageManager = new DummyPackageManager();
+        mResolver = PackageUtils.instantiate(mPackageManager).getResolver();
+    }
+
+    @Test
+    public void getColor_returnColor() {
+        assertThat(mResolver.getColor(EXISTING_LAUNCHABLE_PACKAGE,
+                EXISTING_COLOR_RESOURCE_FULL_NAME, DEFAULT_COLOR), is(EXISTING_COLOR_VALUE));
+    }
+
+    @Test
+    public void getColor_returnDefault() {
+        assertThat(mResolver.getColor(EXISTING_LAUNCHABLE_PACKAGE, VALID_RES_NAME_UNDERSCORE,
+                DEFAULT_COLOR), is(DEFAULT_COLOR));
+        assertThat(mResolver.getColor(EXISTING_LAUNCHABLE_PACKAGE, INVALID_RES_NAME_NO_AT,
+                DEFAULT_COLOR), is(DEFAULT_COLOR));
+        assertNull(mResolver.getStringArray(EXISTING_LAUNCHABLE_PACKAGE, INVALID_RES_NAME_NO_AT));
+    }
+
+    @Test
+    public void getString_resourcesAndIdsCached() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(mResolver.getString(EXISTING_LAUNCHABLE_PACKAGE,
+                    EXISTING_STRING_RESOURCE_FULL_NAME, null), is(EXISTING_STRING_VALUE));
+            assertThat(mResolver.getColor(EXISTING_LAUNCHABLE_PACKAGE,
+                    EXISTING_COLOR_RESOURCE_FULL_NAME, DEFAULT_COLOR), is(EXISTING_COLOR_VALUE));
+            PackageUtils.getInstance().getResourceString(EXISTING_LAUNCHABLE_PACKAGE,
+                    EXISTING_STRING_RESOURCE_NAME);
+            PackageUtils.getInstance().getResourceString(EXISTING_LAUNCHABLE_PACKAGE,
+                    NOT_EXISTING_STRING_RESOURCE_NAME);
+        }
+        assertThat(mPackageManager.getResourcesRequests(), is(1));
+        assertThat(mPackageManager.getIdentifierRequests(), is(3));
+    }
+
+    @Test
+    public void invalidate_reloadsResources() {
+        mResolver.getString(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_STRING_RESOURCE_FULL_NAME, null);
+        PackageUtils.getInstance().onPackageChanged(EXISTING_LAUNCHABLE_PACKAGE);
+        mResolver.getString(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_STRING_RESOURCE_FULL_NAME, null);
+        assertThat(mPackageManager.getResourcesRequests(), is(2));
+        assertThat(mPackageManager.getIdentifierRequests(), is(2));
+    }
+
+    @Test
+    public void nullPackage_returnDefault() {
+        PackageUtils instance = PackageUtils.getInstance();
+        assertThat(mResolver.getString(null, EXISTING_STRING_RESOURCE_FULL_NAME, null),
+                is((String) null));
+        assertThat(instance.getResourceString(null, EXISTING_STRING_RESOURCE_NAME),
+                is(EXISTING_STRING_RESOURCE_NAME));
+        assertThat(instance.getStringByName(null, EXISTING_STRING_RESOURCE_FULL_NAME),
+                is(EXISTING_STRING_RESOURCE_NAME));
+        assertNull(instance.getResourceDrawable(null, EXISTING_STRING_RESOURCE_NAME));
+        assertThat(mPackageManager.getResourcesRequests(), is(0));
+    }
+
+    @Test
+    public void invalidReference_notCached() {
+        mResolver.getString(EXISTING_LAUNCHABLE_PACKAGE, EXISTING_STRING_RESOURCE_FULL_NAME, null);
+        long size = mResolver.getIdsSize();
+        for (int i = 0; i < 3; i++) {
+            mResolver.getString(EXISTING_LAUNCHABLE_PACKAGE, INVALID_RES_NAME_NO_AT + i, null);
+        }
+        assertThat(mResolver.getIdsSize(), is(size));
+    }
+}
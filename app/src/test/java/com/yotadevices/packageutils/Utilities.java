@@ -15,7 +15,9 @@
  */
 package com.yotadevices.packageutils;
 
+import android.content.pm.ActivityInfo;
 import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.DrawableContainer;
 
@@ -35,12 +37,18 @@ public abstract class Utilities {
     public static final String NOT_EXISTING_PACKAGE = "is.there.such_package.no";
     public static final String TYPE_STRING = "string";
     public static final String TYPE_DRAWABLE = "drawable";
+    public static final String TYPE_COLOR = "color";
     public static final String EXISTING_STRING_RESOURCE_NAME = "super_string";
     public static final String EXISTING_STRING_RESOURCE_FULL_NAME =
             "@" + TYPE_STRING + "/" + EXISTING_STRING_RESOURCE_NAME;
     public static final String NOT_EXISTING_STRING_RESOURCE_NAME = "bad_string";
     public static final int EXISTING_RES_ID = android.R.string.dialog_alert_title;
     public static final String EXISTING_STRING_VALUE = "Attention";
+    public static final String EXISTING_COLOR_RESOURCE_NAME = "super_color";
+    public static final String EXISTING_COLOR_RESOURCE_FULL_NAME =
+            "@" + TYPE_COLOR + "/" + EXISTING_COLOR_RESOURCE_NAME;
+    public static final int EXISTING_COLOR_RES_ID = android.R.color.black;
+    public static final int EXISTING_COLOR_VALUE = 0xff000000;
     public static final String EMPTY_STRING = "";
     public static final String RES_NAME = "myres";
     public static final String RES_NAME_PLATFORM = "my_platform_res";
@@ -57,6 +65,10 @@ public abstract class Utilities {
     public static final String EXISTING_META_TAG = "super_tag";
     public static final String NOT_EXISTING_META_TAG = "no_such_super_tag";
     public static final Drawable USELESS_DRAWABLE = new DrawableContainer();
+    public static final int VERSION_CODE = 42;
+    public static final long LAST_UPDATE_TIME = 1487030400000L;
+    public static final String EXPORTED_ACTIVITY = ".ExportedActivity";
+    public static final String PRIVATE_ACTIVITY = ".PrivateActivity";
 
     /**
      * Contains an empty package info.
@@ -93,4 +105,22 @@ public abstract class Utilities {
         }
         return info;
     }
-}
\ No newline at end of file
+
+    public static ActivityInfo createActivityInfo(String packageName, String activity,
+                                                  boolean exported) {
+        ActivityInfo info = new ActivityInfo();
+        info.packageName = packageName;
+        info.name = packageName + activity;
+        info.exported = exported;
+        return info;
+    }
+
+    public static PackageInfo createPackageInfo(String packageName) {
+        PackageInfo info = new PackageInfo();
+        info.packageName = packageName;
+        info.versionCode = VERSION_CODE;
+        info.lastUpdateTime = LAST_UPDATE_TIME;
+        info.applicationInfo = createApplicationInfo(packageName);
+        return info;
+    }
+}